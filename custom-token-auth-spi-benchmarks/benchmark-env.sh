@@ -0,0 +1,12 @@
+#!/usr/bin/env bash
+# Sourced by the run scripts. The SPI reads its endpoints from the environment: point them
+# to the local stand-ins.
+: ${BENCHMARK_PORT:=18089}
+
+export SIMVA_API_URL="http://127.0.0.1:${BENCHMARK_PORT}"
+export SIMVA_API_ADMIN_USERNAME="admin"
+export SIMVA_API_ADMIN_PASSWORD="admin"
+export KEYCLOAK_TOKEN_URL="http://127.0.0.1:${BENCHMARK_PORT}/realms/benchmark/protocol/openid-connect/token"
+export KEYCLOAK_CLIENT_CLIENT_ID="benchmark"
+export KEYCLOAK_CLIENT_CLIENT_SECRET="benchmark"
+export KEYCLOAK_CREDENTIAL_VALIDATION="remote"
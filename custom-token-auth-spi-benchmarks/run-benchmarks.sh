@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+set -eo pipefail
+[[ "${DEBUG}" == "true" ]] && set -x
+
+SCRIPT_DIR=$( cd -P "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )
+
+: ${RESULTS_NAME:=latest}
+
+source "${SCRIPT_DIR}/benchmark-env.sh"
+# The invalid token benchmarks repeat their tokens: measure the full check, not the throttle
+export TOKEN_NEGATIVE_CACHE_TTL="${TOKEN_NEGATIVE_CACHE_TTL-0}"
+export TOKEN_THROTTLE_IP_BURST="${TOKEN_THROTTLE_IP_BURST-0}"
+export TOKEN_THROTTLE_STUDY_BURST="${TOKEN_THROTTLE_STUDY_BURST-0}"
+
+pushd "${SCRIPT_DIR}" > /dev/null
+mvn -B -q package
+mkdir -p results
+# Extra arguments are passed to JMH, e.g. a benchmark regex or "-f 3"
+java -jar target/benchmarks.jar -prof gc -rf json -rff "results/${RESULTS_NAME}.json" "$@" | tee "results/${RESULTS_NAME}.log"
+popd > /dev/null
@@ -0,0 +1,18 @@
+#!/usr/bin/env bash
+set -eo pipefail
+[[ "${DEBUG}" == "true" ]] && set -x
+
+SCRIPT_DIR=$( cd -P "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )
+
+: ${RESULTS_NAME:=latest}
+
+source "${SCRIPT_DIR}/benchmark-env.sh"
+# Have the background warm-up prefetch the groups of the burst study
+export SIMVA_WARMUP_STUDIES="${SIMVA_WARMUP_STUDIES-study-burst}"
+
+pushd "${SCRIPT_DIR}" > /dev/null
+mvn -B -q package
+mkdir -p results
+# The burst is configured through BURST_* and STANDIN_* variables, see LoginBurstHarness
+java -cp target/benchmarks.jar es.eucm.benchmarks.LoginBurstHarness | tee "results/burst-${RESULTS_NAME}.txt"
+popd > /dev/null
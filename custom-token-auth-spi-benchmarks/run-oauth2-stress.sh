@@ -0,0 +1,16 @@
+#!/usr/bin/env bash
+set -eo pipefail
+[[ "${DEBUG}" == "true" ]] && set -x
+
+SCRIPT_DIR=$( cd -P "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )
+
+: ${RESULTS_NAME:=latest}
+
+source "${SCRIPT_DIR}/benchmark-env.sh"
+
+pushd "${SCRIPT_DIR}" > /dev/null
+mvn -B -q package
+mkdir -p results
+# Configured through STRESS_* variables, see OAuth2ClientStressHarness; exits 1 on failure
+java -cp target/benchmarks.jar es.eucm.benchmarks.OAuth2ClientStressHarness | tee "results/oauth2-stress-${RESULTS_NAME}.txt"
+popd > /dev/null
@@ -0,0 +1,85 @@
+package es.eucm.benchmarks;
+
+import es.eucm.utils.EnvConfig;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.annotations.Mode;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guard on the cost of the authenticator instrumentation: runs {@link AuthMetricsBenchmark} with
+ * the GC profiler, in average time, and fails (exit status 1) when recording a stage allocates
+ * more than AUTH_METRICS_MAX_ALLOC bytes per operation, once the meters are registered, or costs
+ * more than AUTH_METRICS_MAX_OVERHEAD ns on top of its two clock reads. Bound to the verify phase
+ * of the module (skipped with -DskipTests), so an instrumentation regression fails the build.
+ */
+public final class AuthMetricsOverheadCheck {
+    // Highest accepted gc.alloc.rate.norm of the recording benchmarks; JMH reports a little noise
+    private static final String MAX_ALLOC = "AUTH_METRICS_MAX_ALLOC";
+    // Highest accepted cost of startStop over clock, in ns
+    private static final String MAX_OVERHEAD = "AUTH_METRICS_MAX_OVERHEAD";
+
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    private AuthMetricsOverheadCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double maxAlloc = EnvConfig.getLong(MAX_ALLOC, 1);
+        double maxOverhead = EnvConfig.getLong(MAX_OVERHEAD, 1000);
+        Options options = new OptionsBuilder()
+            .include(AuthMetricsBenchmark.class.getName() + "\\.")
+            .mode(Mode.AverageTime)
+            .timeUnit(TimeUnit.NANOSECONDS)
+            .warmupIterations(2)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(3)
+            .measurementTime(TimeValue.seconds(1))
+            .forks(1)
+            .addProfiler(GCProfiler.class)
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Map<String, Double> times = new HashMap<>();
+        boolean passed = true;
+        System.out.printf(Locale.ROOT, "%n%-22s %12s %12s%n", "benchmark", "ns/op", "B/op");
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            double time = result.getPrimaryResult().getScore();
+            Result<?> alloc = result.getSecondaryResults().get(ALLOC_NORM);
+            double bytes = alloc != null ? alloc.getScore() : Double.NaN;
+            times.put(name, time);
+            System.out.printf(Locale.ROOT, "%-22s %12.1f %12.3f%n", name, time, bytes);
+            if (!name.equals("clock") && !(bytes <= maxAlloc)) {
+                System.out.printf(Locale.ROOT, "%s allocates %.3f B/op, more than %s=%.0f%n", name, bytes, MAX_ALLOC, maxAlloc);
+                passed = false;
+            }
+        }
+        Double clock = times.get("clock");
+        Double startStop = times.get("startStop");
+        if (clock == null || startStop == null) {
+            System.out.println("Missing clock or startStop results");
+            passed = false;
+        } else {
+            double overhead = startStop - clock;
+            System.out.printf(Locale.ROOT, "Overhead of a recorded stage: %.1f ns (at most %s=%.0f)%n", overhead, MAX_OVERHEAD, maxOverhead);
+            if (overhead > maxOverhead) {
+                passed = false;
+            }
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -0,0 +1,102 @@
+package es.eucm.benchmarks;
+
+import es.eucm.keycloak.CustomAuthenticator;
+import es.eucm.utils.OutboundHttpClient;
+import es.eucm.utils.SimvaKeycloakCheck;
+
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.UriInfo;
+import org.keycloak.authentication.AuthenticationFlowContext;
+import org.keycloak.http.HttpRequest;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code CustomAuthenticator.action} for a token login of a study with 1000 participants,
+ * on stubbed flow contexts. Keycloak's own username/password pre-check is skipped
+ * ({@link NoPrecheckAuthenticator}).
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AuthenticatorActionBenchmark extends BenchmarkDefaults {
+    private static final String STUDY = "study-action";
+    private static final int PARTICIPANTS = 1000;
+
+    private SimvaStandIn standIn;
+    private SimvaKeycloakCheck check;
+    private CustomAuthenticator authenticator;
+    private List<String> tokens;
+    private RealmModel realm;
+    private KeycloakSession session;
+    private MultivaluedMap<String, String> queryParameters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkLogging.install();
+        GroupPayloads payloads = GroupPayloads.generate(STUDY, PARTICIPANTS);
+        tokens = payloads.getTokens();
+        standIn = new SimvaStandIn();
+        standIn.addStudy(STUDY, payloads);
+        check = new SimvaKeycloakCheck(OutboundHttpClient.acquire());
+
+        realm = Stubs.of(RealmModel.class, Map.of("getName", "benchmark"));
+        UserProvider users = Stubs.of(UserProvider.class, Map.of("getUserByUsername", Stubs.of(UserModel.class)));
+        session = Stubs.of(KeycloakSession.class, Map.of("users", users));
+        authenticator = new NoPrecheckAuthenticator(session, check);
+
+        queryParameters = new MultivaluedHashMap<>();
+        queryParameters.putSingle("client_id", "simva");
+        queryParameters.putSingle("response_type", "code");
+        queryParameters.putSingle("login_hint", STUDY);
+        queryParameters.putSingle("simva_user_token", "true");
+        // Warm the groups cache and the admin token outside of the measurement
+        authenticator.action(context(tokens.get(0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        check.close();
+        OutboundHttpClient.release();
+        standIn.close();
+    }
+
+    private AuthenticationFlowContext context(String token) {
+        MultivaluedMap<String, String> form = new MultivaluedHashMap<>();
+        form.putSingle("username", token);
+        form.putSingle("password", "");
+        UriInfo uri = Stubs.of(UriInfo.class, Map.of("getQueryParameters", queryParameters));
+        HttpRequest request = Stubs.of(HttpRequest.class, Map.of("getUri", uri, "getDecodedFormParameters", form));
+        return Stubs.of(AuthenticationFlowContext.class, Map.of(
+            "getHttpRequest", request, "getRealm", realm, "getSession", session));
+    }
+
+    @Benchmark
+    public AuthenticationFlowContext validToken() {
+        AuthenticationFlowContext context = context(tokens.get(ThreadLocalRandom.current().nextInt(tokens.size())));
+        authenticator.action(context);
+        return context;
+    }
+
+    @Benchmark
+    public AuthenticationFlowContext invalidToken() {
+        AuthenticationFlowContext context = context("unknown-" + ThreadLocalRandom.current().nextInt(1000));
+        authenticator.action(context);
+        return context;
+    }
+}
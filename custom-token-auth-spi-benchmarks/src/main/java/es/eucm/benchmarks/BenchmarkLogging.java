@@ -0,0 +1,58 @@
+package es.eucm.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Routes logging to a handler that formats every record at INFO (or at DEBUG for the categories
+ * passed to {@link #enableDebug}) and discards it, so that the benchmarks pay for logging the
+ * way a Keycloak node does without flooding the JMH output.
+ */
+public final class BenchmarkLogging {
+    private static volatile int sink;
+    // JUL only keeps weak references to its loggers: hold the ones whose level was changed
+    private static final List<Logger> debugLoggers = new CopyOnWriteArrayList<>();
+
+    private BenchmarkLogging() {
+    }
+
+    public static synchronized void install() {
+        LogManager.getLogManager().reset();
+        Logger root = Logger.getLogger("");
+        root.setLevel(Level.INFO);
+        Handler handler = new Handler() {
+            private final SimpleFormatter formatter = new SimpleFormatter();
+
+            @Override
+            public void publish(LogRecord record) {
+                if (isLoggable(record)) {
+                    sink += formatter.format(record).length();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        handler.setLevel(Level.ALL);
+        root.addHandler(handler);
+        debugLoggers.clear();
+    }
+
+    // Lowers one logging category to DEBUG (FINE); everything else stays at INFO
+    public static synchronized void enableDebug(String category) {
+        Logger logger = Logger.getLogger(category);
+        logger.setLevel(Level.FINE);
+        debugLoggers.add(logger);
+    }
+}
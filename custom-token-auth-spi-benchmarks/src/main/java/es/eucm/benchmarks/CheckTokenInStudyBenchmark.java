@@ -0,0 +1,70 @@
+package es.eucm.benchmarks;
+
+import es.eucm.utils.AuthMetrics;
+import es.eucm.utils.OutboundHttpClient;
+import es.eucm.utils.SimvaKeycloakCheck;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@code SimvaKeycloakCheck.checkTokenInStudy} path with remote credential validation
+ * against the local stand-ins: failed token/token grant, groups lookup, index resolution and
+ * the grant of the resolved participant username.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CheckTokenInStudyBenchmark extends BenchmarkDefaults {
+    private static final String STUDY = "study-check";
+
+    @Param({"10", "1000", "10000"})
+    public int participants;
+
+    private SimvaStandIn standIn;
+    private SimvaKeycloakCheck check;
+    private AuthMetrics.Scope metrics;
+    private List<String> tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkLogging.install();
+        GroupPayloads payloads = GroupPayloads.generate(STUDY, participants);
+        tokens = payloads.getTokens();
+        standIn = new SimvaStandIn();
+        standIn.addStudy(STUDY, payloads);
+        check = new SimvaKeycloakCheck(OutboundHttpClient.acquire());
+        metrics = check.getMetrics().scope("benchmark", AuthMetrics.Flow.BROWSER);
+        // Warm the groups cache and the admin token outside of the measurement
+        check.checkTokenInStudy(null, null, STUDY, tokens.get(0), metrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        check.close();
+        OutboundHttpClient.release();
+        standIn.close();
+    }
+
+    @Benchmark
+    public SimpleEntry<Boolean, String> validParticipant() throws IOException {
+        String token = tokens.get(ThreadLocalRandom.current().nextInt(tokens.size()));
+        return check.checkTokenInStudy(null, null, STUDY, token, metrics);
+    }
+
+    @Benchmark
+    public SimpleEntry<Boolean, String> unknownToken() throws IOException {
+        return check.checkTokenInStudy(null, null, STUDY, "unknown-" + ThreadLocalRandom.current().nextInt(1000), metrics);
+    }
+}
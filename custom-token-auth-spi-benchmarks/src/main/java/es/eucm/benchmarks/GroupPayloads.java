@@ -0,0 +1,73 @@
+package es.eucm.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic /studies/{id}/groups payloads shaped like Simva's: participants are listed by their
+ * "<group>_<token>" username and each group carries the bookkeeping fields the SPI skips.
+ */
+public final class GroupPayloads {
+    public static final int PARTICIPANTS_PER_GROUP = 100;
+
+    private final byte[] json;
+    private final List<String> tokens;
+    private final List<String> groupIds;
+
+    private GroupPayloads(byte[] json, List<String> tokens, List<String> groupIds) {
+        this.json = json;
+        this.tokens = tokens;
+        this.groupIds = groupIds;
+    }
+
+    public static GroupPayloads generate(String study, int participants) {
+        int groups = Math.max(1, (participants + PARTICIPANTS_PER_GROUP - 1) / PARTICIPANTS_PER_GROUP);
+        List<String> tokens = new ArrayList<>(participants);
+        List<String> groupIds = new ArrayList<>(groups);
+        StringBuilder json = new StringBuilder(participants * 24 + groups * 256);
+        json.append('[');
+        for (int g = 0; g < groups; g++) {
+            String groupId = String.format("%024x", (long) study.hashCode() * 31 + g);
+            groupIds.add(groupId);
+            if (g > 0) {
+                json.append(',');
+            }
+            json.append("{\"_id\":\"").append(groupId).append('"')
+                .append(",\"name\":\"Group ").append(g).append('"')
+                .append(",\"owners\":[\"teacher\"]")
+                .append(",\"created\":\"2024-03-01T10:00:00.000Z\"")
+                .append(",\"participants\":[");
+            int from = g * PARTICIPANTS_PER_GROUP;
+            int to = Math.min(participants, from + PARTICIPANTS_PER_GROUP);
+            for (int p = from; p < to; p++) {
+                String token = String.format("%04x", p & 0xffff) + Integer.toString(p, 36);
+                tokens.add(token);
+                if (p > from) {
+                    json.append(',');
+                }
+                json.append('"').append(groupId).append('_').append(token).append('"');
+            }
+            json.append("],\"__v\":0}");
+        }
+        json.append(']');
+        return new GroupPayloads(json.toString().getBytes(StandardCharsets.UTF_8), tokens, groupIds);
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public List<String> getGroupIds() {
+        return groupIds;
+    }
+
+    // Group id of a token generated by this payload
+    public String groupOf(int tokenIndex) {
+        return groupIds.get(tokenIndex / PARTICIPANTS_PER_GROUP);
+    }
+}
@@ -0,0 +1,359 @@
+package es.eucm.benchmarks;
+
+import es.eucm.keycloak.CustomAuthenticator;
+import es.eucm.keycloak.CustomAuthenticatorFactory;
+import es.eucm.keycloak.ValidateTokenUsernameAuthenticator;
+import es.eucm.utils.AuthMetrics;
+import es.eucm.utils.EnvConfig;
+import es.eucm.utils.SimvaWarmup;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import org.keycloak.authentication.AuthenticationFlowContext;
+import org.keycloak.events.EventBuilder;
+import org.keycloak.events.EventType;
+import org.keycloak.http.HttpRequest;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end login burst against the local stand-ins: a class of students opens the login
+ * page and submits its participant tokens within a short window, through the browser form
+ * ({@code CustomAuthenticator.authenticate} then {@code action}) and/or the direct grant
+ * ({@code ValidateTokenUsernameAuthenticator.authenticate}), on stubbed flow contexts and a
+ * Simva service created by {@code CustomAuthenticatorFactory.postInit}, as in Keycloak.
+ * <p>
+ * Logins arrive on schedule whatever the state of the worker pool, and their latency is
+ * measured from that scheduled arrival, so queueing behind saturated workers is included.
+ * Run it with run-login-burst.sh, which sets the endpoints of the SPI; every knob below is
+ * read from the environment.
+ */
+public final class LoginBurstHarness {
+    private static final String STUDY = "study-burst";
+
+    // Logins of the burst and window they arrive in
+    private static final String BURST_LOGINS = "BURST_LOGINS";
+    private static final String BURST_WINDOW = "BURST_WINDOW";
+    // uniform: evenly spread; poisson: random arrivals at the same mean rate; spike: all at once
+    private static final String BURST_PROFILE = "BURST_PROFILE";
+    // browser, direct-grant or mixed (alternating)
+    private static final String BURST_FLOW = "BURST_FLOW";
+    // Share of mistyped tokens
+    private static final String BURST_INVALID_PERCENT = "BURST_INVALID_PERCENT";
+    // Participants of the study, 100 per group
+    private static final String BURST_PARTICIPANTS = "BURST_PARTICIPANTS";
+    // Request worker threads of the Keycloak node
+    private static final String BURST_WORKERS = "BURST_WORKERS";
+    // Starts the burst once the warm-up started by postInit has finished, rather than right after
+    // postInit; run-login-burst.sh has the warm-up prefetch the study
+    private static final String BURST_WARM = "BURST_WARM";
+    private static final String BURST_SEED = "BURST_SEED";
+    // Latency, jitter and failure rate of Simva (admin login, groups) and of the realm token endpoint
+    private static final String STANDIN_SIMVA_LATENCY = "STANDIN_SIMVA_LATENCY";
+    private static final String STANDIN_SIMVA_LATENCY_JITTER = "STANDIN_SIMVA_LATENCY_JITTER";
+    private static final String STANDIN_SIMVA_FAILURE_PERCENT = "STANDIN_SIMVA_FAILURE_PERCENT";
+    private static final String STANDIN_TOKEN_LATENCY = "STANDIN_TOKEN_LATENCY";
+    private static final String STANDIN_TOKEN_LATENCY_JITTER = "STANDIN_TOKEN_LATENCY_JITTER";
+    private static final String STANDIN_TOKEN_FAILURE_PERCENT = "STANDIN_TOKEN_FAILURE_PERCENT";
+
+    private enum Flow {
+        BROWSER, DIRECT_GRANT
+    }
+
+    private enum Outcome {
+        SUCCESS, REJECTED, FAILED
+    }
+
+    private static final class Login {
+        final Flow flow;
+        final String token;
+        final boolean valid;
+        final long arrival;
+        long start;
+        long end;
+        Outcome outcome;
+
+        Login(Flow flow, String token, boolean valid, long arrival) {
+            this.flow = flow;
+            this.token = token;
+            this.valid = valid;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * Responses cannot be built without a JAX-RS implementation, and the flow stubs discard
+     * them anyway.
+     */
+    private static final class NoResponseDirectGrantAuthenticator extends ValidateTokenUsernameAuthenticator {
+        @Override
+        public Response errorResponse(int status, String error, String errorDescription) {
+            return null;
+        }
+    }
+
+    private final RealmModel realm;
+    private final KeycloakSession session;
+    private final CustomAuthenticator browser;
+    private final ValidateTokenUsernameAuthenticator directGrant;
+
+    private LoginBurstHarness(SimvaStandIn standIn, CustomAuthenticatorFactory factory) {
+        this.realm = Stubs.of(RealmModel.class, Map.of(
+            "getName", "burst",
+            "getEventsListenersStream", (Stubs.Answer) args -> Stream.empty()));
+        UserModel user = Stubs.of(UserModel.class, Map.of("isEnabled", true));
+        UserProvider users = Stubs.of(UserProvider.class, Map.of(
+            "getUserByUsername", (Stubs.Answer) args -> standIn.isParticipant((String) args[1]) ? user : null));
+        KeycloakSessionFactory sessionFactory = Stubs.of(KeycloakSessionFactory.class, Map.of("getProviderFactory", factory));
+        this.session = Stubs.of(KeycloakSession.class, Map.of("users", users, "getKeycloakSessionFactory", sessionFactory));
+        this.browser = new NoPrecheckAuthenticator(session, factory.getSimvaKeycloakCheck());
+        this.directGrant = new NoResponseDirectGrantAuthenticator();
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkLogging.install();
+        int logins = (int) EnvConfig.getLong(BURST_LOGINS, 300);
+        long window = EnvConfig.getLong(BURST_WINDOW, 60000);
+        String profile = getString(BURST_PROFILE, "uniform");
+        String flow = getString(BURST_FLOW, "mixed");
+        long invalidPercent = EnvConfig.getLong(BURST_INVALID_PERCENT, 5);
+        int participants = (int) EnvConfig.getLong(BURST_PARTICIPANTS, logins);
+        int workers = (int) EnvConfig.getLong(BURST_WORKERS, 64);
+        boolean warm = Boolean.parseBoolean(getString(BURST_WARM, "false"));
+        Random random = new Random(EnvConfig.getLong(BURST_SEED, 42));
+
+        GroupPayloads payloads = GroupPayloads.generate(STUDY, participants);
+        List<Login> burst = plan(payloads.getTokens(), logins, window, profile, flow, invalidPercent, random);
+
+        System.out.printf(Locale.ROOT, "Burst: %d logins %s, %s flow, %d%% mistyped tokens, %d participants, %d workers, %s%n",
+            logins, "spike".equals(profile) ? "at once" : "in " + window + " ms, " + profile + " arrivals",
+            flow, invalidPercent, participants, workers, warm ? "after warm-up" : "at startup");
+
+        // Backs the stage metrics of the SPI, as Keycloak's registry would
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try (SimvaStandIn standIn = new SimvaStandIn()) {
+            standIn.addStudy(STUDY, payloads);
+            configureFaults(standIn);
+            CustomAuthenticatorFactory factory = new CustomAuthenticatorFactory();
+            factory.postInit(null);
+            try {
+                LoginBurstHarness harness = new LoginBurstHarness(standIn, factory);
+                SimvaWarmup warmup = factory.getSimvaKeycloakCheck().getWarmup();
+                if (warm) {
+                    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+                    while (!warmup.isReady() && System.nanoTime() - deadline < 0) {
+                        Thread.sleep(10);
+                    }
+                    System.out.printf(Locale.ROOT, "Warm-up: %s in %d ms%n", warmup.getState(), warmup.getDuration());
+                    standIn.resetRequestCount();
+                }
+                long started = System.nanoTime();
+                harness.run(burst, started, workers);
+                report(burst, started, standIn, registry);
+            } finally {
+                factory.close();
+            }
+        }
+    }
+
+    private static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static void configureFaults(SimvaStandIn standIn) {
+        long simvaLatency = EnvConfig.getLong(STANDIN_SIMVA_LATENCY, 20);
+        long simvaJitter = EnvConfig.getLong(STANDIN_SIMVA_LATENCY_JITTER, 30);
+        double simvaFailures = EnvConfig.getLong(STANDIN_SIMVA_FAILURE_PERCENT, 0) / 100.0;
+        long tokenLatency = EnvConfig.getLong(STANDIN_TOKEN_LATENCY, 10);
+        long tokenJitter = EnvConfig.getLong(STANDIN_TOKEN_LATENCY_JITTER, 20);
+        double tokenFailures = EnvConfig.getLong(STANDIN_TOKEN_FAILURE_PERCENT, 0) / 100.0;
+        standIn.setFault(SimvaStandIn.Endpoint.ADMIN_LOGIN, simvaLatency, simvaJitter, simvaFailures);
+        standIn.setFault(SimvaStandIn.Endpoint.GROUPS, simvaLatency, simvaJitter, simvaFailures);
+        standIn.setFault(SimvaStandIn.Endpoint.TOKEN, tokenLatency, tokenJitter, tokenFailures);
+        standIn.setFault(SimvaStandIn.Endpoint.LOGOUT, tokenLatency, tokenJitter, tokenFailures);
+        System.out.printf(Locale.ROOT, "Stand-ins: Simva %d+%d ms, %.0f%% 503; token endpoint %d+%d ms, %.0f%% 503%n",
+            simvaLatency, simvaJitter, simvaFailures * 100, tokenLatency, tokenJitter, tokenFailures * 100);
+    }
+
+    // Every student logs in once (or more when there are more logins than participants), in random order
+    private static List<Login> plan(List<String> tokens, int logins, long window, String profile, String flow,
+                                    long invalidPercent, Random random) {
+        List<String> order = new ArrayList<>(tokens);
+        Collections.shuffle(order, random);
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        double meanGap = logins == 0 ? 0 : (double) windowNanos / logins;
+        List<Login> burst = new ArrayList<>(logins);
+        double arrival = 0;
+        for (int i = 0; i < logins; i++) {
+            switch (profile) {
+                case "spike":
+                    arrival = 0;
+                    break;
+                case "poisson":
+                    arrival += -Math.log(1 - random.nextDouble()) * meanGap;
+                    break;
+                case "uniform":
+                    arrival = i * meanGap;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown " + BURST_PROFILE + ": " + profile);
+            }
+            Flow loginFlow;
+            switch (flow) {
+                case "browser":
+                    loginFlow = Flow.BROWSER;
+                    break;
+                case "direct-grant":
+                    loginFlow = Flow.DIRECT_GRANT;
+                    break;
+                case "mixed":
+                    loginFlow = i % 2 == 0 ? Flow.BROWSER : Flow.DIRECT_GRANT;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown " + BURST_FLOW + ": " + flow);
+            }
+            String token = order.get(i % order.size());
+            boolean valid = random.nextInt(100) >= invalidPercent;
+            burst.add(new Login(loginFlow, valid ? token : token + "x", valid, (long) arrival));
+        }
+        return burst;
+    }
+
+    private void run(List<Login> burst, long started, int workers) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (Login login : burst) {
+                long wait = started + login.arrival - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                pool.execute(() -> execute(login));
+            }
+        } finally {
+            pool.shutdown();
+            if (!pool.awaitTermination(10, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Burst did not complete within 10 minutes");
+            }
+        }
+    }
+
+    private void execute(Login login) {
+        login.start = System.nanoTime();
+        Outcome[] outcome = {Outcome.FAILED};
+        try {
+            if (login.flow == Flow.BROWSER) {
+                // Login page, whose challenge is not the outcome, then the submitted token
+                browser.authenticate(context(login, new Outcome[1]));
+                browser.action(context(login, outcome));
+            } else {
+                directGrant.authenticate(context(login, outcome));
+            }
+        } catch (RuntimeException e) {
+            outcome[0] = Outcome.FAILED;
+        }
+        login.end = System.nanoTime();
+        login.outcome = outcome[0] == Outcome.REJECTED && login.valid ? Outcome.FAILED : outcome[0];
+    }
+
+    private AuthenticationFlowContext context(Login login, Outcome[] outcome) {
+        MultivaluedMap<String, String> query = new MultivaluedHashMap<>();
+        MultivaluedMap<String, String> form = new MultivaluedHashMap<>();
+        if (login.flow == Flow.BROWSER) {
+            query.putSingle("client_id", "simva");
+            query.putSingle("response_type", "code");
+            query.putSingle("login_hint", STUDY);
+            query.putSingle("simva_user_token", "true");
+            form.putSingle("username", login.token);
+            form.putSingle("password", "");
+        } else {
+            form.putSingle("grant_type", "password");
+            form.putSingle("client_id", "simva");
+            form.putSingle("login_hint", STUDY);
+            form.putSingle("username", login.token);
+        }
+        UriInfo uri = Stubs.of(UriInfo.class, Map.of("getQueryParameters", query));
+        HttpRequest request = Stubs.of(HttpRequest.class, Map.of("getUri", uri, "getDecodedFormParameters", form));
+        Stubs.Answer success = args -> outcome[0] = Outcome.SUCCESS;
+        Stubs.Answer rejected = args -> outcome[0] = Outcome.REJECTED;
+        return Stubs.of(AuthenticationFlowContext.class, Map.of(
+            "getHttpRequest", request,
+            "getRealm", realm,
+            "getSession", session,
+            "getEvent", new EventBuilder(realm, session).event(EventType.LOGIN),
+            "success", success,
+            "challenge", rejected,
+            "failure", rejected,
+            "forceChallenge", rejected));
+    }
+
+    private static void report(List<Login> burst, long started, SimvaStandIn standIn, SimpleMeterRegistry registry) {
+        int logins = burst.size();
+        long[] latencies = new long[logins];
+        long[] service = new long[logins];
+        long last = started;
+        Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+        for (int i = 0; i < logins; i++) {
+            Login login = burst.get(i);
+            latencies[i] = login.end - (started + login.arrival);
+            service[i] = login.end - login.start;
+            last = Math.max(last, login.end);
+            outcomes.merge(login.outcome, 1, Integer::sum);
+        }
+        Arrays.sort(latencies);
+        Arrays.sort(service);
+        double seconds = (last - started) / 1e9;
+        System.out.printf(Locale.ROOT, "Completed %d logins in %.2f s: %.1f logins/s%n", logins, seconds, logins / seconds);
+        System.out.printf(Locale.ROOT, "Outcomes: %d success, %d mistyped tokens rejected, %d valid logins failed%n",
+            outcomes.getOrDefault(Outcome.SUCCESS, 0), outcomes.getOrDefault(Outcome.REJECTED, 0), outcomes.getOrDefault(Outcome.FAILED, 0));
+        System.out.printf(Locale.ROOT, "Latency from arrival (ms): p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+            millis(latencies, 0.50), millis(latencies, 0.99), millis(latencies, 0.999), millis(latencies, 1));
+        System.out.printf(Locale.ROOT, "Service time (ms):         p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+            millis(service, 0.50), millis(service, 0.99), millis(service, 0.999), millis(service, 1));
+        System.out.printf(Locale.ROOT, "Authenticator steps ending in an I/O error: %d%n", count(registry, "io_error"));
+        StringBuilder calls = new StringBuilder();
+        for (SimvaStandIn.Endpoint endpoint : SimvaStandIn.Endpoint.values()) {
+            calls.append(String.format(Locale.ROOT, ", %s %.3f", endpoint.name().toLowerCase(Locale.ROOT),
+                (double) standIn.getRequestCount(endpoint) / logins));
+        }
+        System.out.printf(Locale.ROOT, "Outbound calls per login: %.2f (%s)%n", (double) standIn.getRequestCount() / logins, calls.substring(2));
+    }
+
+    private static long count(SimpleMeterRegistry registry, String outcome) {
+        return registry.find(AuthMetrics.STAGE_TIMER).tag("stage", "authenticate").tag("outcome", outcome)
+            .timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    // Nearest-rank percentile
+    private static double millis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,23 @@
+package es.eucm.benchmarks;
+
+import es.eucm.keycloak.CustomAuthenticator;
+import es.eucm.utils.SimvaKeycloakCheck;
+
+import jakarta.ws.rs.core.MultivaluedMap;
+import org.keycloak.authentication.AuthenticationFlowContext;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * {@code CustomAuthenticator} whose Keycloak username/password pre-check always fails, as it
+ * does for a participant token. The pre-check is not code of this SPI and needs a live realm.
+ */
+final class NoPrecheckAuthenticator extends CustomAuthenticator {
+    NoPrecheckAuthenticator(KeycloakSession session, SimvaKeycloakCheck check) {
+        super(session, check);
+    }
+
+    @Override
+    public boolean validateUserAndPassword(AuthenticationFlowContext context, MultivaluedMap<String, String> inputData) {
+        return false;
+    }
+}
@@ -0,0 +1,215 @@
+package es.eucm.benchmarks;
+
+import es.eucm.utils.EnvConfig;
+import es.eucm.utils.KeycloakOAuth2Client;
+import es.eucm.utils.OutboundHttpClient;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Multi-threaded stress test of the shared {@code KeycloakOAuth2Client}: 1, 4, 16... threads run
+ * password grant + logout pairs through one client instance against a local mock of the realm
+ * token and logout endpoints, which issues a distinct session per grant.
+ * <p>
+ * Every pair checks that the grant it got back is its own (the refresh token names the user it
+ * was issued to) and that its logout closed exactly that session; the mock counts logouts of
+ * unknown or already closed sessions, and sessions still open at the end are leaks. Throughput
+ * is compared with the single-thread run: with a fixed endpoint latency it should grow linearly
+ * with the threads. The process exits with status 1 on any crossed or leaked session, or when a
+ * run scales below STRESS_MIN_EFFICIENCY. Run it with run-oauth2-stress.sh.
+ */
+public final class OAuth2ClientStressHarness {
+    // Comma-separated thread counts, the first one being the reference
+    private static final String STRESS_THREADS = "STRESS_THREADS";
+    // Grant + logout pairs per thread
+    private static final String STRESS_PAIRS = "STRESS_PAIRS";
+    // Latency of the mock token and logout endpoints (ms)
+    private static final String STRESS_LATENCY = "STRESS_LATENCY";
+    // Lowest accepted throughput, as a percentage of linear scaling from the reference run
+    private static final String STRESS_MIN_EFFICIENCY = "STRESS_MIN_EFFICIENCY";
+
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicLong sessionIds = new AtomicLong();
+    // Open sessions: refresh token -> username
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    private final LongAdder strayLogouts = new LongAdder();
+
+    private OAuth2ClientStressHarness(long latencyMillis) throws IOException {
+        String tokenUrl = System.getenv("KEYCLOAK_TOKEN_URL");
+        if (tokenUrl == null) {
+            throw new IllegalStateException("KEYCLOAK_TOKEN_URL must be set, use run-oauth2-stress.sh");
+        }
+        URI uri = URI.create(tokenUrl);
+        server.setServerSocketFactory(new SimvaStandIn.NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                MockResponse response = OAuth2ClientStressHarness.this.dispatch(request);
+                return latencyMillis > 0 ? response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS) : response;
+            }
+        });
+        server.start(InetAddress.getByName(uri.getHost()), uri.getPort());
+    }
+
+    private MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath() == null ? "" : request.getPath();
+        HttpUrl form = HttpUrl.get("http://localhost/?" + request.getBody().readUtf8());
+        if (path.endsWith("/protocol/openid-connect/token")) {
+            String username = form.queryParameter("username");
+            if (username == null || !username.equals(form.queryParameter("password"))) {
+                return new MockResponse().setResponseCode(401).setBody("{\"error\":\"invalid_grant\"}");
+            }
+            String refreshToken = "refresh-" + sessionIds.incrementAndGet() + "-" + username;
+            sessions.put(refreshToken, username);
+            return new MockResponse().setHeader("Content-Type", "application/json")
+                .setBody("{\"access_token\":\"access-" + username + "\",\"refresh_token\":\"" + refreshToken + "\",\"token_type\":\"Bearer\"}");
+        }
+        if (path.endsWith("/protocol/openid-connect/logout")) {
+            String refreshToken = form.queryParameter("refresh_token");
+            if (refreshToken == null || sessions.remove(refreshToken) == null) {
+                strayLogouts.increment();
+                return new MockResponse().setResponseCode(400).setBody("{\"error\":\"invalid_grant\"}");
+            }
+            return new MockResponse().setResponseCode(204);
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private static final class Run {
+        final int threads;
+        final long pairs;
+        final long nanos;
+        final long crossed;
+        final long failed;
+
+        Run(int threads, long pairs, long nanos, long crossed, long failed) {
+            this.threads = threads;
+            this.pairs = pairs;
+            this.nanos = nanos;
+            this.crossed = crossed;
+            this.failed = failed;
+        }
+
+        double throughput() {
+            return pairs / (nanos / 1e9);
+        }
+    }
+
+    private Run run(KeycloakOAuth2Client client, int threads, int pairsPerThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        LongAdder crossed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                String prefix = "user-" + threads + "-" + t + "-";
+                workers.add(pool.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < pairsPerThread; i++) {
+                        String username = prefix + i;
+                        try {
+                            KeycloakOAuth2Client.Grant grant = client.validateUserCredentials(username, username);
+                            if (!grant.isValid() || !grant.hasSession()) {
+                                failed.increment();
+                                continue;
+                            }
+                            if (!grant.getRefreshToken().endsWith("-" + username)
+                                    || !("access-" + username).equals(grant.getAccessToken())) {
+                                crossed.increment();
+                            }
+                            if (!client.disconnect(grant)) {
+                                failed.increment();
+                            }
+                        } catch (IOException e) {
+                            failed.increment();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            long nanos = System.nanoTime() - start;
+            return new Run(threads, (long) threads * pairsPerThread, nanos, crossed.sum(), failed.sum());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String threadList = System.getenv(STRESS_THREADS);
+        int pairs = (int) EnvConfig.getLong(STRESS_PAIRS, 300);
+        long latency = EnvConfig.getLong(STRESS_LATENCY, 10);
+        long minEfficiency = EnvConfig.getLong(STRESS_MIN_EFFICIENCY, 70);
+        List<Integer> threadCounts = new ArrayList<>();
+        for (String count : (threadList != null && !threadList.isEmpty() ? threadList : "1,4,16").split(",")) {
+            threadCounts.add(Integer.parseInt(count.trim()));
+        }
+
+        boolean passed = true;
+        OAuth2ClientStressHarness harness = new OAuth2ClientStressHarness(latency);
+        try {
+            // One client for every thread, as SimvaKeycloakCheck holds it
+            KeycloakOAuth2Client client = new KeycloakOAuth2Client(OutboundHttpClient.acquire());
+            // Warm-up: connections, JIT
+            harness.run(client, threadCounts.get(threadCounts.size() - 1), Math.max(1, pairs / 10));
+            harness.sessions.clear();
+            harness.strayLogouts.reset();
+
+            System.out.printf(Locale.ROOT, "KeycloakOAuth2Client stress: %d grant+logout pairs per thread, endpoint latency %d ms%n", pairs, latency);
+            System.out.printf(Locale.ROOT, "%8s %8s %10s %12s %11s %8s %7s %7s%n",
+                "threads", "pairs", "time (ms)", "pairs/s", "efficiency", "crossed", "failed", "leaked");
+            Run reference = null;
+            for (int threads : threadCounts) {
+                Run run = harness.run(client, threads, pairs);
+                if (reference == null) {
+                    reference = run;
+                }
+                double efficiency = run.throughput() / (reference.throughput() * threads / reference.threads);
+                int leaked = harness.sessions.size();
+                System.out.printf(Locale.ROOT, "%8d %8d %10.0f %12.1f %10.0f%% %8d %7d %7d%n",
+                    threads, run.pairs, run.nanos / 1e6, run.throughput(), efficiency * 100, run.crossed, run.failed, leaked);
+                if (run.crossed > 0 || run.failed > 0 || leaked > 0 || efficiency * 100 < minEfficiency) {
+                    passed = false;
+                }
+                harness.sessions.clear();
+            }
+            System.out.printf(Locale.ROOT, "Logouts of unknown or closed sessions: %d%n", harness.strayLogouts.sum());
+            if (harness.strayLogouts.sum() > 0) {
+                passed = false;
+            }
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } finally {
+            harness.server.shutdown();
+            OutboundHttpClient.release();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -0,0 +1,81 @@
+package es.eucm.benchmarks;
+
+import es.eucm.utils.OutboundHttpClient;
+import es.eucm.utils.SimvaApiClient;
+import es.eucm.utils.SimvaGroup;
+import es.eucm.utils.StudyParticipantIndex;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parsing of group payloads and study/group resolution.
+ */
+@State(Scope.Benchmark)
+public class ParseJsonBenchmark extends BenchmarkDefaults {
+    private static final String STUDY = "study-parse";
+    private static final ObjectReader treeReader = new ObjectMapper().reader();
+
+    @Param({"10", "1000", "10000"})
+    public int participants;
+
+    private GroupPayloads payloads;
+    private SimvaApiClient client;
+    private List<SimvaGroup> groups;
+    private StudyParticipantIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkLogging.install();
+        payloads = GroupPayloads.generate(STUDY, participants);
+        client = new SimvaApiClient(OutboundHttpClient.acquire());
+        groups = SimvaApiClient.readGroups(new ByteArrayInputStream(payloads.getJson()));
+        index = new StudyParticipantIndex();
+        index.sync(STUDY, groups);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        OutboundHttpClient.release();
+    }
+
+    // Typed, streaming binding used by getStudyGroups
+    @Benchmark
+    public List<SimvaGroup> readGroups() throws IOException {
+        return SimvaApiClient.readGroups(new ByteArrayInputStream(payloads.getJson()));
+    }
+
+    // Generic tree-then-map binding used by sendGetRequest
+    @Benchmark
+    public Map<String, Object> parseJson() throws IOException {
+        return client.parseJson(treeReader.readTree(payloads.getJson()));
+    }
+
+    // Building the participant index of a study from a freshly fetched payload
+    @Benchmark
+    public StudyParticipantIndex buildIndex() {
+        StudyParticipantIndex fresh = new StudyParticipantIndex();
+        fresh.sync(STUDY, groups);
+        return fresh;
+    }
+
+    // Resolving the group of a participant token
+    @Benchmark
+    public String resolveGroup() {
+        List<String> tokens = payloads.getTokens();
+        return index.groupOf(STUDY, tokens.get(ThreadLocalRandom.current().nextInt(tokens.size())));
+    }
+}
@@ -0,0 +1,54 @@
+package es.eucm.benchmarks;
+
+import es.eucm.keycloak.CustomAuthenticator;
+import es.eucm.utils.RequestTrace;
+
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Request logging of the login page, as done on every {@code CustomAuthenticator.authenticate}
+ * and failed pre-check in {@code action}: with the RequestTrace category at INFO (off) and at
+ * DEBUG with every request sampled (on).
+ */
+@State(Scope.Benchmark)
+public class RequestTraceBenchmark extends BenchmarkDefaults {
+    @Param({"off", "on"})
+    public String tracing;
+
+    private CustomAuthenticator authenticator;
+    private MultivaluedMap<String, String> queryParameters;
+    private MultivaluedMap<String, String> formData;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkLogging.install();
+        if ("on".equals(tracing)) {
+            BenchmarkLogging.enableDebug(RequestTrace.class.getName());
+        }
+        authenticator = new CustomAuthenticator(null, null);
+        queryParameters = new MultivaluedHashMap<>();
+        queryParameters.putSingle("client_id", "simva");
+        queryParameters.putSingle("redirect_uri", "https://simva.example.org/auth/callback");
+        queryParameters.putSingle("response_type", "code");
+        queryParameters.putSingle("scope", "openid profile");
+        queryParameters.putSingle("login_hint", "65f1c0a9e4b0a1b2c3d4e5f6");
+        queryParameters.putSingle("simva_user_token", "true");
+        formData = new MultivaluedHashMap<>();
+        formData.putSingle("username", "4f2a1b");
+        formData.putSingle("password", "4f2a1b");
+        formData.putSingle("credentialId", "");
+    }
+
+    @Benchmark
+    public MultivaluedMap<String, String> logRequest() {
+        authenticator.logRequest(queryParameters, formData);
+        return formData;
+    }
+}
@@ -0,0 +1,215 @@
+package es.eucm.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Local stand-in for both Simva and the realm token endpoint, served by one MockWebServer.
+ * The SPI reads its endpoints from the environment, so the server listens on the port of
+ * SIMVA_API_URL; KEYCLOAK_TOKEN_URL must point to the same host and port
+ * (run-benchmarks.sh sets both). Every endpoint can be given a latency and a failure rate,
+ * and its requests are counted separately.
+ */
+public final class SimvaStandIn implements AutoCloseable {
+    public enum Endpoint {
+        ADMIN_LOGIN, GROUPS, TOKEN, LOGOUT, OTHER
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, byte[]> studies = new ConcurrentHashMap<>();
+    private final Set<String> usernames = ConcurrentHashMap.newKeySet();
+    private final LongAdder requests = new LongAdder();
+    private final Map<Endpoint, LongAdder> endpointRequests = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Fault> faults = new ConcurrentHashMap<>();
+
+    private static final class Fault {
+        final long latencyMillis;
+        final long jitterMillis;
+        final double failureRate;
+
+        Fault(long latencyMillis, long jitterMillis, double failureRate) {
+            this.latencyMillis = latencyMillis;
+            this.jitterMillis = jitterMillis;
+            this.failureRate = failureRate;
+        }
+    }
+
+    public SimvaStandIn() throws IOException {
+        String apiUrl = System.getenv("SIMVA_API_URL");
+        String tokenUrl = System.getenv("KEYCLOAK_TOKEN_URL");
+        if (apiUrl == null || tokenUrl == null) {
+            throw new IllegalStateException("SIMVA_API_URL and KEYCLOAK_TOKEN_URL must be set, use run-benchmarks.sh");
+        }
+        URI uri = URI.create(apiUrl);
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpointRequests.put(endpoint, new LongAdder());
+            faults.put(endpoint, new Fault(0, 0, 0));
+        }
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                requests.increment();
+                Endpoint endpoint = endpointOf(request);
+                endpointRequests.get(endpoint).increment();
+                return inject(faults.get(endpoint), SimvaStandIn.this.dispatch(request));
+            }
+        });
+        server.start(InetAddress.getByName(uri.getHost()), uri.getPort());
+    }
+
+    // Serves the groups of a study and accepts "<group>_<token>" / token logins for its participants
+    public void addStudy(String study, GroupPayloads payloads) {
+        studies.put(study, payloads.getJson());
+        for (int i = 0; i < payloads.getTokens().size(); i++) {
+            usernames.add(payloads.groupOf(i) + "_" + payloads.getTokens().get(i));
+        }
+    }
+
+    public boolean isParticipant(String username) {
+        return usernames.contains(username);
+    }
+
+    // Delays every response of the endpoint by latency plus a uniform jitter, and answers a share of them with a 503
+    public void setFault(Endpoint endpoint, long latencyMillis, long jitterMillis, double failureRate) {
+        faults.put(endpoint, new Fault(latencyMillis, jitterMillis, failureRate));
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getRequestCount(Endpoint endpoint) {
+        return endpointRequests.get(endpoint).sum();
+    }
+
+    public void resetRequestCount() {
+        requests.reset();
+        endpointRequests.values().forEach(LongAdder::reset);
+    }
+
+    private static Endpoint endpointOf(RecordedRequest request) {
+        String path = request.getPath() == null ? "" : request.getPath();
+        if (path.endsWith("/users/login")) {
+            return Endpoint.ADMIN_LOGIN;
+        } else if (path.startsWith("/studies/") && path.endsWith("/groups")) {
+            return Endpoint.GROUPS;
+        } else if (path.endsWith("/protocol/openid-connect/token")) {
+            return Endpoint.TOKEN;
+        } else if (path.endsWith("/protocol/openid-connect/logout")) {
+            return Endpoint.LOGOUT;
+        }
+        return Endpoint.OTHER;
+    }
+
+    private static MockResponse inject(Fault fault, MockResponse response) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (fault.failureRate > 0 && random.nextDouble() < fault.failureRate) {
+            response = new MockResponse().setResponseCode(503);
+        }
+        long delay = fault.latencyMillis + (fault.jitterMillis > 0 ? random.nextLong(fault.jitterMillis + 1) : 0);
+        return delay > 0 ? response.setHeadersDelay(delay, TimeUnit.MILLISECONDS) : response;
+    }
+
+    private MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath() == null ? "" : request.getPath();
+        if (path.endsWith("/users/login")) {
+            return json("{\"token\":\"benchmark-admin-token\"}");
+        }
+        if (path.startsWith("/studies/") && path.endsWith("/groups")) {
+            byte[] payload = studies.get(path.substring("/studies/".length(), path.length() - "/groups".length()));
+            return payload == null ? new MockResponse().setResponseCode(404) : json(payload);
+        }
+        if (path.endsWith("/protocol/openid-connect/token")) {
+            Map<String, String> form = readForm(request.getBody());
+            String username = form.get("username");
+            String password = form.get("password");
+            if (username != null && usernames.contains(username) && username.endsWith("_" + password)) {
+                return json("{\"access_token\":\"access\",\"refresh_token\":\"refresh\",\"token_type\":\"Bearer\"}");
+            }
+            return new MockResponse().setResponseCode(401).setBody("{\"error\":\"invalid_grant\"}");
+        }
+        if (path.endsWith("/protocol/openid-connect/logout")) {
+            return new MockResponse().setResponseCode(204);
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private static Map<String, String> readForm(Buffer body) {
+        Map<String, String> form = new ConcurrentHashMap<>();
+        HttpUrl parsed = HttpUrl.get("http://localhost/?" + body.readUtf8());
+        for (String name : parsed.queryParameterNames()) {
+            String value = parsed.queryParameter(name);
+            if (value != null) {
+                form.put(name, value);
+            }
+        }
+        return form;
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static MockResponse json(byte[] body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(new Buffer().write(body));
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * MockWebServer writes the status line and the body in separate segments; with Nagle's
+     * algorithm on, every response would wait for a delayed ACK (~40 ms on Linux) and the
+     * benchmarks would measure nothing but that.
+     */
+    static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package es.eucm.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Minimal dynamic stubs of Keycloak interfaces. Methods listed in the answers map return the
+ * given value, or the result of the given {@link Answer}; other methods returning an interface return a fresh stub, primitives their
+ * default value and everything else null.
+ */
+public final class Stubs {
+    private Stubs() {
+    }
+
+    /**
+     * Computed answer, for methods whose result depends on the arguments or that must record
+     * their calls.
+     */
+    @FunctionalInterface
+    public interface Answer {
+        Object answer(Object[] args);
+    }
+
+    public static <T> T of(Class<T> type) {
+        return of(type, Map.of());
+    }
+
+    public static <T> T of(Class<T> type, Map<String, Object> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (answers.containsKey(name)) {
+                Object answer = answers.get(name);
+                return answer instanceof Answer ? ((Answer) answer).answer(args) : answer;
+            }
+            switch (name) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + " stub";
+                default:
+                    break;
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == type) {
+                return proxy;
+            }
+            if (returnType.isInterface()) {
+                return of(returnType);
+            }
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == int.class || returnType == long.class || returnType == short.class
+                || returnType == byte.class || returnType == float.class || returnType == double.class
+                || returnType == char.class) {
+                return primitiveZero(returnType);
+            }
+            return null;
+        };
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object primitiveZero(Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        }
+        return (char) 0;
+    }
+}
@@ -1,6 +1,9 @@
 package es.eucm.keycloak;
 
+import es.eucm.utils.AuthMetrics;
+import es.eucm.utils.RequestTrace;
 import es.eucm.utils.SimvaKeycloakCheck;
+import es.eucm.utils.TokenThrottledException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.keycloak.authentication.AuthenticationFlowContext;
@@ -26,15 +29,16 @@ import java.util.AbstractMap.SimpleEntry;
 public class CustomAuthenticator extends AbstractUsernameFormAuthenticator implements Authenticator {
 
     private final Logger logger = LoggerFactory.getLogger(CustomAuthenticator.class);
+    private static final RequestTrace trace = RequestTrace.getInstance();
 
     private ObjectMapper objectMapper = new ObjectMapper();
 
     private final KeycloakSession session;
-    private SimvaKeycloakCheck simvaKeycloakCheck;
+    private final SimvaKeycloakCheck simvaKeycloakCheck;
 
-    public CustomAuthenticator(KeycloakSession session) {
+    public CustomAuthenticator(KeycloakSession session, SimvaKeycloakCheck simvaKeycloakCheck) {
         this.session = session;
-        simvaKeycloakCheck= new SimvaKeycloakCheck();
+        this.simvaKeycloakCheck = simvaKeycloakCheck;
     }
 
     /**
@@ -45,8 +49,7 @@ public class CustomAuthenticator extends AbstractUsernameFormAuthenticator imple
      */
     @Override
     public void authenticate(AuthenticationFlowContext context) {
-        logMap(context.getHttpRequest().getUri().getQueryParameters());
-        logMap(context.getHttpRequest().getDecodedFormParameters());
+        logRequest(context.getHttpRequest().getUri().getQueryParameters(), context.getHttpRequest().getDecodedFormParameters());
         String simvaUserTokenPresent = context.getHttpRequest().getUri().getQueryParameters().getFirst("simva_user_token");
         
         MultivaluedMap<String, String> formData = new MultivaluedHashMap<>();
@@ -71,7 +74,7 @@ public class CustomAuthenticator extends AbstractUsernameFormAuthenticator imple
         }
 
         if(simvaUserTokenPresent == null) {
-            logger.info("AUTHENTICATE username/password custom provider");
+            logger.debug("AUTHENTICATE username/password custom provider");
             Response challengeResponse = challenge(context.form(), formData);
             context.challenge(challengeResponse);
         } else {
@@ -82,8 +85,8 @@ public class CustomAuthenticator extends AbstractUsernameFormAuthenticator imple
                 studyurl.append("&login_hint=").append(study);
             }
             studyurl.append("&simva_user_token=true");
-            logger.info(studyurl.toString());
-            logger.info("AUTHENTICATE token custom provider");
+            logger.debug("Study URL: {}", studyurl);
+            logger.debug("AUTHENTICATE token custom provider");
             Response challengeResponse = challenge(context.form()
                 .setAttribute("studyurl", studyurl.toString())
                 .setAttribute("simvaUserToken", "true")
@@ -99,35 +102,24 @@ public class CustomAuthenticator extends AbstractUsernameFormAuthenticator imple
         return forms.createLoginUsernamePassword();
     }
 
-    public void logMap(MultivaluedMap<String, String> formData) {
-        StringBuilder logMessage = new StringBuilder();
-
-        // Iterate over each entry and append to the log message
-        for (String key : formData.keySet()) {
-            // For each key, get all values associated with it (since it's MultivaluedMap)
-            for (String value : formData.get(key)) {
-                logMessage.append(key).append("=").append(value).append(", ");
-            }
-        }
-
-        // Remove the trailing comma and space if present
-        if (logMessage.length() > 0) {
-            logMessage.setLength(logMessage.length() - 2); // Remove last ", "
+    /**
+     * Traces the query and form parameters of a sampled request, with credentials redacted.
+     */
+    public void logRequest(MultivaluedMap<String, String> queryParameters, MultivaluedMap<String, String> formData) {
+        if (trace.isSampled()) {
+            trace.parameters("Query", queryParameters);
+            trace.parameters("Form", formData);
         }
-
-        // Log the message
-        logger.info("Data: {}", logMessage.toString());
     }
 
     @Override
     public void action(AuthenticationFlowContext context) {
-        logger.info("CUSTOMER PROVIDER action");
+        logger.debug("CUSTOMER PROVIDER action");
         MultivaluedMap<String, String> formData = context.getHttpRequest().getDecodedFormParameters();
         if(validateUserAndPassword(context, formData)) {
             context.success(); // Proceed if token is valid
         } else {
-            logMap(context.getHttpRequest().getUri().getQueryParameters());
-            logMap(formData);
+            logRequest(context.getHttpRequest().getUri().getQueryParameters(), formData);
             if (formData.containsKey("cancel")) {
                 context.cancelLogin();
                 return;
@@ -135,64 +127,92 @@ public class CustomAuthenticator extends AbstractUsernameFormAuthenticator imple
             String username = formData.getFirst("username");
             String password = formData.getFirst("password");
             String simvaUserTokenPresent = context.getHttpRequest().getUri().getQueryParameters().getFirst("simva_user_token");
-            logger.info("Simva User Token Present : " + simvaUserTokenPresent);
-            if(simvaUserTokenPresent != null) {
-                logger.info("AUTHENTICATE token custom provider: " + username);
-                String study = context.getHttpRequest().getUri().getQueryParameters().getFirst("login_hint");
-                logger.info("Study: " + study);
-                SimpleEntry<Boolean, String> validate;
-                try {
-                    validate = this.simvaKeycloakCheck.checkTokenInStudy(study, username);
-                } catch(IOException e) {
-                    logger.info(e.toString());
-                    validate = new SimpleEntry<>(false, null);
-                }
-                if(validate.getKey()) {
-                    String updatedUsername = validate.getValue();
-                    // Set the new username in the authentication session
-                    context.setUser(context.getSession().users().getUserByUsername(context.getRealm(), updatedUsername));
-                    context.success(); // Proceed if token is valid
-                    return;
-                } else {
-                    StringBuilder studyurl = new StringBuilder();
-                    studyurl.append("");
-                    if(study != "") {
-                        studyurl.append("&login_hint=").append(study);
+            logger.debug("Simva User Token Present : {}", simvaUserTokenPresent);
+            AuthMetrics.Scope metrics = this.simvaKeycloakCheck.getMetrics().scope(context.getRealm().getName(), AuthMetrics.Flow.BROWSER);
+            AuthMetrics.Outcome outcome = AuthMetrics.Outcome.INVALID;
+            long start = metrics.start(AuthMetrics.Stage.AUTHENTICATE);
+            try {
+                if(simvaUserTokenPresent != null || this.simvaKeycloakCheck.isSignedToken(username)) {
+                    logger.debug("AUTHENTICATE token custom provider");
+                    String study = context.getHttpRequest().getUri().getQueryParameters().getFirst("login_hint");
+                    logger.debug("Study: {}", study);
+                    SimpleEntry<Boolean, String> validate;
+                    String error = "Missing or invalid token.";
+                    try {
+                        validate = this.simvaKeycloakCheck.checkTokenInStudy(context.getSession(), context.getRealm(), study, username, metrics);
+                    } catch(TokenThrottledException e) {
+                        logger.info(e.toString());
+                        outcome = AuthMetrics.Outcome.ERROR;
+                        error = "Too many failed attempts, please try again in a minute.";
+                        validate = new SimpleEntry<>(false, null);
+                    } catch(IOException e) {
+                        logger.info(e.toString());
+                        outcome = AuthMetrics.Outcome.ERROR;
+                        validate = new SimpleEntry<>(false, null);
+                    }
+                    if(validate.getKey()) {
+                        String updatedUsername = validate.getValue();
+                        // Set the new username in the authentication session
+                        context.setUser(lookupUser(context, updatedUsername, metrics));
+                        context.success(); // Proceed if token is valid
+                        outcome = AuthMetrics.Outcome.SUCCESS;
+                        return;
+                    } else {
+                        StringBuilder studyurl = new StringBuilder();
+                        studyurl.append("");
+                        if(study != "") {
+                            studyurl.append("&login_hint=").append(study);
+                        }
+                        studyurl.append("&simva_user_token=true");
+                        logger.debug("Study URL: {}", studyurl);
+                        // Create a form error response
+                        Response challengeResponse = context.form()
+                            .setError(error)
+                            .setAttribute("simvaUserToken", "true")
+                            .setAttribute("studyurl", studyurl.toString())
+                            .createForm("login.ftl");
+                        context.challenge(challengeResponse);
                     }
-                    studyurl.append("&simva_user_token=true");
-                    logger.info(studyurl.toString());
-                    // Create a form error response
-                    Response challengeResponse = context.form()
-                        .setError("Missing or invalid token.")
-                        .setAttribute("simvaUserToken", "true")
-                        .setAttribute("studyurl", studyurl.toString())
-                        .createForm("login.ftl");
-                    context.challenge(challengeResponse);
-                }
-            } else {
-                logger.info("AUTHENTICATE username password custom provider: " + username);
-                Boolean valid;
-                try {
-                    valid = this.simvaKeycloakCheck.checkUsernamePassword(username, password);
-                } catch(IOException e) {
-                    logger.info(e.toString());
-                    valid=false;
-                }
-                if(valid) {
-                    // Set the username in the authentication session
-                    context.setUser(context.getSession().users().getUserByUsername(context.getRealm(), username));
-                    context.success(); // Proceed if token is valid
-                    return;
                 } else {
-                    // Create a form error response
-                    Response challengeResponse = context.form()
-                        .setError("Missing or invalid username or password.")
-                        .createForm("login.ftl");
-                    context.challenge(challengeResponse);
+                    logger.debug("AUTHENTICATE username password custom provider: {}", username);
+                    Boolean valid;
+                    try {
+                        valid = this.simvaKeycloakCheck.checkUsernamePassword(context.getSession(), context.getRealm(), username, password, metrics);
+                    } catch(IOException e) {
+                        logger.info(e.toString());
+                        outcome = AuthMetrics.Outcome.ERROR;
+                        valid=false;
+                    }
+                    if(valid) {
+                        // Set the username in the authentication session
+                        context.setUser(lookupUser(context, username, metrics));
+                        context.success(); // Proceed if token is valid
+                        outcome = AuthMetrics.Outcome.SUCCESS;
+                        return;
+                    } else {
+                        // Create a form error response
+                        Response challengeResponse = context.form()
+                            .setError("Missing or invalid username or password.")
+                            .createForm("login.ftl");
+                        context.challenge(challengeResponse);
+                    }
                 }
+            } finally {
+                metrics.stop(AuthMetrics.Stage.AUTHENTICATE, outcome, start);
             }
         }
     }
+
+    private UserModel lookupUser(AuthenticationFlowContext context, String username, AuthMetrics.Scope metrics) {
+        UserModel user = null;
+        long start = metrics.start(AuthMetrics.Stage.USER_LOOKUP);
+        try {
+            user = context.getSession().users().getUserByUsername(context.getRealm(), username);
+            return user;
+        } finally {
+            metrics.stop(AuthMetrics.Stage.USER_LOOKUP, user != null, start);
+        }
+    }
     
     @Override
     public boolean requiresUser() {
@@ -1,6 +1,9 @@
 package es.eucm.keycloak;
 
 import es.eucm.keycloak.CustomAuthenticator;
+import es.eucm.utils.ClusterCacheConfig;
+import es.eucm.utils.OutboundHttpClient;
+import es.eucm.utils.SimvaKeycloakCheck;
 
 import org.keycloak.Config;
 import org.keycloak.authentication.Authenticator;
@@ -8,6 +11,7 @@ import org.keycloak.authentication.AuthenticatorFactory;
 import org.keycloak.models.AuthenticationExecutionModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.provider.ProviderConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,11 +24,13 @@ public class CustomAuthenticatorFactory implements AuthenticatorFactory {
     private final Logger log = LoggerFactory.getLogger(CustomAuthenticatorFactory.class);
     public static final String PROVIDER_ID = "token-authenticator";
 
+    private volatile SimvaKeycloakCheck simvaKeycloakCheck;
+
     AuthenticationExecutionModel.Requirement[] REQUIREMENT_CHOICES = new AuthenticationExecutionModel.Requirement[]{AuthenticationExecutionModel.Requirement.REQUIRED};
     
     @Override
     public Authenticator create(KeycloakSession session) {
-        return new CustomAuthenticator(session);
+        return new CustomAuthenticator(session, getSimvaKeycloakCheck());
     }
 
     @Override
@@ -34,12 +40,64 @@ public class CustomAuthenticatorFactory implements AuthenticatorFactory {
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
-        // Post initialization
+        // Post initialization: create the node-wide outbound HTTP client and Simva service,
+        // restore the groups saved by the previous run, and warm the service up in the background
+        // without holding up Keycloak startup
+        this.simvaKeycloakCheck = new SimvaKeycloakCheck(OutboundHttpClient.acquire());
+        shareGroupsWithCluster(factory, this.simvaKeycloakCheck);
+        this.simvaKeycloakCheck.restoreSnapshot();
+        this.simvaKeycloakCheck.startWarmup();
+    }
+
+    // With SIMVA_CLUSTER_CACHE, study groups are loaded once for the cluster instead of once per node
+    private void shareGroupsWithCluster(KeycloakSessionFactory factory, SimvaKeycloakCheck check) {
+        ClusterCacheConfig config = new ClusterCacheConfig();
+        if (!config.isClusterCache()) {
+            return;
+        }
+        try {
+            KeycloakModelUtils.runJobInTransaction(factory, session ->
+                check.setSharedGroupStore(InfinispanGroupStore.create(session, config, check.getGroupsCacheTtl())));
+        } catch (RuntimeException e) {
+            log.warn("Unable to set up the cluster-wide study groups cache, caching per node", e);
+        }
     }
 
     @Override
     public void close() {
-        // Close the provider
+        // Close the provider and release the pooled connections
+        if (this.simvaKeycloakCheck != null) {
+            this.simvaKeycloakCheck.close();
+            this.simvaKeycloakCheck = null;
+            OutboundHttpClient.release();
+        }
+    }
+
+    /**
+     * Node-wide Simva service shared by every authenticator of this module.
+     */
+    public SimvaKeycloakCheck getSimvaKeycloakCheck() {
+        SimvaKeycloakCheck check = this.simvaKeycloakCheck;
+        if (check == null) {
+            synchronized (this) {
+                if (this.simvaKeycloakCheck == null) {
+                    log.warn("Simva service requested before postInit, creating it now");
+                    this.simvaKeycloakCheck = new SimvaKeycloakCheck(OutboundHttpClient.acquire());
+                    this.simvaKeycloakCheck.startWarmup();
+                }
+                check = this.simvaKeycloakCheck;
+            }
+        }
+        return check;
+    }
+
+    /**
+     * Looks up the node-wide Simva service from any session, e.g. for the direct grant authenticator.
+     */
+    public static SimvaKeycloakCheck getSimvaKeycloakCheck(KeycloakSession session) {
+        CustomAuthenticatorFactory factory = (CustomAuthenticatorFactory) session.getKeycloakSessionFactory()
+            .getProviderFactory(Authenticator.class, PROVIDER_ID);
+        return factory.getSimvaKeycloakCheck();
     }
 
     @Override
@@ -0,0 +1,144 @@
+package es.eucm.keycloak;
+
+import es.eucm.utils.ClusterCacheConfig;
+import es.eucm.utils.SharedGroupStore;
+import es.eucm.utils.SharedGroups;
+
+import org.infinispan.Cache;
+import org.infinispan.commons.api.CacheContainerAdmin;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.context.Flag;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Study groups shared by the cluster in a dedicated cache of Keycloak's embedded Infinispan,
+ * replicated to every node or distributed over SIMVA_CLUSTER_CACHE_OWNERS of them. Values are
+ * {@link SharedGroups} JSON strings. A clustered listener tells this node about studies stored
+ * by the others, so their local copies are dropped. Entries expire with the groups cache TTL.
+ * Failures are logged and otherwise ignored: the node then keeps loading from Simva.
+ */
+public class InfinispanGroupStore implements SharedGroupStore {
+
+    private static final Logger log = LoggerFactory.getLogger(InfinispanGroupStore.class);
+
+    private final Cache<String, String> cache;
+    private final long lifespanMillis;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ChangeListener listener = new ChangeListener();
+    private volatile Consumer<String> changeListener = study -> { };
+
+    InfinispanGroupStore(Cache<String, String> cache, long lifespanMillis) {
+        this.cache = cache;
+        this.lifespanMillis = lifespanMillis;
+        this.cache.addListener(this.listener);
+    }
+
+    /**
+     * Gets or creates the dedicated cache through the session's InfinispanConnectionProvider.
+     * Without a clustered cache manager (the "local" cache stack) the cache stays local.
+     * @param lifespanSeconds seconds a shared copy is kept
+     */
+    public static InfinispanGroupStore create(KeycloakSession session, ClusterCacheConfig config, long lifespanSeconds) {
+        InfinispanConnectionProvider provider = session.getProvider(InfinispanConnectionProvider.class);
+        EmbeddedCacheManager manager = provider.getCache(InfinispanConnectionProvider.WORK_CACHE_NAME).getCacheManager();
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        long lifespanMillis = TimeUnit.SECONDS.toMillis(Math.max(1, lifespanSeconds));
+        if (!manager.getCacheManagerConfiguration().isClustered()) {
+            builder.clustering().cacheMode(CacheMode.LOCAL);
+        } else if (config.isDistributed()) {
+            builder.clustering().cacheMode(CacheMode.DIST_SYNC).hash().numOwners((int) Math.max(1, config.getOwners()));
+        } else {
+            builder.clustering().cacheMode(CacheMode.REPL_SYNC);
+        }
+        builder.expiration().lifespan(lifespanMillis, TimeUnit.MILLISECONDS);
+        Cache<String, String> cache = manager.administration()
+            .withFlags(CacheContainerAdmin.AdminFlag.VOLATILE)
+            .getOrCreateCache(config.getName(), builder.build());
+        log.info("Sharing study groups in Infinispan cache {} ({})", config.getName(), cache.getCacheConfiguration().clustering().cacheMode());
+        return new InfinispanGroupStore(cache, lifespanMillis);
+    }
+
+    @Override
+    public SharedGroups get(String study) {
+        try {
+            String value = cache.get(study);
+            return value != null ? SharedGroups.fromJson(value) : null;
+        } catch (IOException | RuntimeException e) {
+            log.info("Unable to read study {} from the cluster cache: {}", study, e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String study, SharedGroups groups) {
+        try {
+            // Other nodes get the copy asynchronously, off the login's critical path
+            cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES)
+                .putAsync(study, groups.toJson(), lifespanMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((previous, e) -> {
+                    if (e != null) {
+                        log.info("Unable to share study {} with the cluster: {}", study, e.toString());
+                    }
+                });
+        } catch (IOException | RuntimeException e) {
+            log.info("Unable to share study {} with the cluster: {}", study, e.toString());
+        }
+    }
+
+    @Override
+    public void setChangeListener(Consumer<String> listener) {
+        this.changeListener = listener;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void close() {
+        try {
+            cache.removeListener(listener);
+        } catch (RuntimeException e) {
+            // Cache manager already stopped
+        }
+    }
+
+    @Listener(clustered = true)
+    public class ChangeListener {
+
+        @CacheEntryCreated
+        @CacheEntryModified
+        public void stored(CacheEntryEvent<String, String> event) {
+            String value = event.getValue();
+            try {
+                if (value != null && nodeId.equals(SharedGroups.readWriter(value))) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Unreadable copy: drop the local one all the same
+            }
+            changeListener.accept(event.getKey());
+        }
+
+        @CacheEntryRemoved
+        public void removed(CacheEntryEvent<String, String> event) {
+            changeListener.accept(event.getKey());
+        }
+    }
+}
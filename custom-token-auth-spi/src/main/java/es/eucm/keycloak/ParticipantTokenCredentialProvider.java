@@ -0,0 +1,86 @@
+package es.eucm.keycloak;
+
+import es.eucm.utils.ParticipantTokenHasher;
+
+import org.keycloak.credential.CredentialInput;
+import org.keycloak.credential.CredentialInputValidator;
+import org.keycloak.credential.CredentialModel;
+import org.keycloak.credential.CredentialProvider;
+import org.keycloak.credential.CredentialTypeMetadata;
+import org.keycloak.credential.CredentialTypeMetadataContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Fast-hash credential of Simva participant tokens (see {@link ParticipantTokenHasher}). The
+ * credentials are created by the token authenticators on the first successful login of a
+ * participant; this provider lets Keycloak list, remove and validate them.
+ */
+public class ParticipantTokenCredentialProvider implements CredentialProvider<CredentialModel>, CredentialInputValidator {
+
+    private final KeycloakSession session;
+    private final ParticipantTokenHasher hasher;
+
+    /**
+     * @param hasher hasher of the configured key, or null if none is configured: no token is then valid
+     */
+    public ParticipantTokenCredentialProvider(KeycloakSession session, ParticipantTokenHasher hasher) {
+        this.session = session;
+        this.hasher = hasher;
+    }
+
+    @Override
+    public String getType() {
+        return ParticipantTokenHasher.TYPE;
+    }
+
+    @Override
+    public CredentialModel createCredential(RealmModel realm, UserModel user, CredentialModel credentialModel) {
+        return user.credentialManager().createStoredCredential(credentialModel);
+    }
+
+    @Override
+    public boolean deleteCredential(RealmModel realm, UserModel user, String credentialId) {
+        return user.credentialManager().removeStoredCredentialById(credentialId);
+    }
+
+    @Override
+    public CredentialModel getCredentialFromModel(CredentialModel model) {
+        return model;
+    }
+
+    @Override
+    public CredentialTypeMetadata getCredentialTypeMetadata(CredentialTypeMetadataContext metadataContext) {
+        return CredentialTypeMetadata.builder()
+            .type(getType())
+            .category(CredentialTypeMetadata.Category.BASIC_AUTHENTICATION)
+            // Literal text: the consoles show unknown message keys as they are, and no theme defines these
+            .displayName("Simva participant token")
+            .helpText("Fast hash of the participant's Simva token, made on its first login. Removing it only slows the next login down.")
+            .removeable(true)
+            .build(session);
+    }
+
+    @Override
+    public boolean supportsCredentialType(String credentialType) {
+        return getType().equals(credentialType);
+    }
+
+    @Override
+    public boolean isConfiguredFor(RealmModel realm, UserModel user, String credentialType) {
+        return supportsCredentialType(credentialType)
+            && user.credentialManager().getStoredCredentialsByTypeStream(credentialType).findAny().isPresent();
+    }
+
+    @Override
+    public boolean isValid(RealmModel realm, UserModel user, CredentialInput credentialInput) {
+        if (hasher == null || !supportsCredentialType(credentialInput.getType())) {
+            return false;
+        }
+        String token = credentialInput.getChallengeResponse();
+        CredentialModel password = ParticipantTokenHasher.currentPassword(user);
+        return user.credentialManager().getStoredCredentialsByTypeStream(getType())
+            .anyMatch(stored -> hasher.matches(stored, token, password));
+    }
+}
@@ -0,0 +1,34 @@
+package es.eucm.keycloak;
+
+import es.eucm.utils.KeycloakConfig;
+import es.eucm.utils.ParticipantTokenHasher;
+
+import org.keycloak.Config;
+import org.keycloak.credential.CredentialProviderFactory;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * Registers the Simva participant token credential type. The hashing key is read once from
+ * KEYCLOAK_TOKEN_CREDENTIAL_KEY, like the rest of the module configuration.
+ */
+public class ParticipantTokenCredentialProviderFactory implements CredentialProviderFactory<ParticipantTokenCredentialProvider> {
+
+    public static final String PROVIDER_ID = ParticipantTokenHasher.TYPE;
+
+    private ParticipantTokenHasher hasher;
+
+    @Override
+    public ParticipantTokenCredentialProvider create(KeycloakSession session) {
+        return new ParticipantTokenCredentialProvider(session, hasher);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        this.hasher = ParticipantTokenHasher.fromConfig(new KeycloakConfig());
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
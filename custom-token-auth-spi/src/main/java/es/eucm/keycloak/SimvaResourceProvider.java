@@ -0,0 +1,253 @@
+package es.eucm.keycloak;
+
+import es.eucm.utils.AuthMetrics;
+import es.eucm.utils.BulkValidationConfig;
+import es.eucm.utils.SimvaKeycloakCheck;
+import es.eucm.utils.SimvaWarmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resources.admin.AdminAuth;
+import org.keycloak.services.resources.admin.permissions.AdminPermissions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotAuthorizedException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simva endpoints of a realm, at /realms/{realm}/simva.
+ */
+public class SimvaResourceProvider implements RealmResourceProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(SimvaResourceProvider.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final KeycloakSession session;
+    private final BulkValidationConfig bulkConfig;
+
+    public SimvaResourceProvider(KeycloakSession session, BulkValidationConfig bulkConfig) {
+        this.session = session;
+        this.bulkConfig = bulkConfig;
+    }
+
+    @Override
+    public Object getResource() {
+        return this;
+    }
+
+    /**
+     * Readiness of the node for token logins: 200 once the background warm-up of the Simva
+     * service has finished (READY, or DEGRADED if Simva could not be reached), 503 while it is
+     * still running. Load balancers can poll it to add a restarted node only once it is warm.
+     */
+    @GET
+    @Path("ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response ready() {
+        SimvaWarmup warmup = CustomAuthenticatorFactory.getSimvaKeycloakCheck(session).getWarmup();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("state", warmup.getState().name());
+        body.put("duration", warmup.getDuration());
+        Response.Status status = warmup.isReady() ? Response.Status.OK : Response.Status.SERVICE_UNAVAILABLE;
+        return Response.status(status).entity(body).build();
+    }
+
+    /**
+     * Checks a batch of participant tokens for Simva's admin tools, without logging anyone in or
+     * issuing tokens. The body is a JSON array of {"study": ..., "token": ...} items, at most
+     * SIMVA_BULK_VALIDATION_MAX_ITEMS of them (413 beyond). Items are grouped by study and each
+     * study is checked in one pass (see SimvaKeycloakCheck.checkTokensInStudy), in a transaction
+     * of its own. The response is streamed: the results of a study are written and flushed as soon
+     * as it is checked, so they come in study order, each with the "index" of its item in the
+     * request: {"index": ..., "valid": true, "username": ...}, {"index": ..., "valid": false}, or
+     * {"index": ..., "valid": false, "error": ...} with "missing_study" or "missing_token" for
+     * incomplete items and "unavailable" when the item's study could not be checked. The totals
+     * close the response. Requires a bearer token of the realm allowed to view its users.
+     */
+    @POST
+    @Path("tokens/validate")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response validateTokens(InputStream body) {
+        requireViewUsers();
+        if (!bulkConfig.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        List<String> studies = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        try {
+            if (!readItems(body, bulkConfig.getMaxItems(), studies, tokens)) {
+                return error(Response.Status.REQUEST_ENTITY_TOO_LARGE, "At most " + bulkConfig.getMaxItems() + " items per batch");
+            }
+        } catch (IOException e) {
+            return error(Response.Status.BAD_REQUEST, "Expected a JSON array of {study, token} items");
+        }
+
+        String realmId = session.getContext().getRealm().getId();
+        KeycloakSessionFactory factory = session.getKeycloakSessionFactory();
+        SimvaKeycloakCheck check = CustomAuthenticatorFactory.getSimvaKeycloakCheck(session);
+        AuthMetrics.Scope metrics = check.getMetrics().scope(session.getContext().getRealm().getName(), AuthMetrics.Flow.BULK);
+        Map<String, List<Integer>> itemsByStudy = new LinkedHashMap<>();
+        List<Integer> incomplete = new ArrayList<>();
+        for (int i = 0; i < studies.size(); i++) {
+            if (isBlank(studies.get(i)) || isBlank(tokens.get(i))) {
+                incomplete.add(i);
+            } else {
+                itemsByStudy.computeIfAbsent(studies.get(i), study -> new ArrayList<>()).add(i);
+            }
+        }
+        // The request's session may be closed once the response starts: every study gets its own
+        StreamingOutput output = out -> {
+            try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+                int valid = 0;
+                int errors = 0;
+                json.writeStartObject();
+                json.writeArrayFieldStart("results");
+                for (int item : incomplete) {
+                    writeResult(json, item, null, isBlank(studies.get(item)) ? "missing_study" : "missing_token");
+                    errors++;
+                }
+                for (Map.Entry<String, List<Integer>> e : itemsByStudy.entrySet()) {
+                    List<Integer> items = e.getValue();
+                    List<String> studyTokens = new ArrayList<>(items.size());
+                    for (int item : items) {
+                        studyTokens.add(tokens.get(item));
+                    }
+                    String[] usernames = checkStudy(factory, realmId, check, e.getKey(), studyTokens, metrics);
+                    for (int i = 0; i < items.size(); i++) {
+                        String username = usernames != null ? usernames[i] : null;
+                        writeResult(json, items.get(i), username, usernames == null ? "unavailable" : null);
+                        if (username != null) {
+                            valid++;
+                        } else if (usernames == null) {
+                            errors++;
+                        }
+                    }
+                    json.flush();
+                }
+                json.writeEndArray();
+                json.writeNumberField("valid", valid);
+                json.writeNumberField("invalid", tokens.size() - valid - errors);
+                json.writeNumberField("errors", errors);
+                json.writeEndObject();
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    // The usernames of a study's tokens, or null if the study could not be checked
+    private static String[] checkStudy(KeycloakSessionFactory factory, String realmId, SimvaKeycloakCheck check,
+                                       String study, List<String> tokens, AuthMetrics.Scope metrics) {
+        try {
+            return KeycloakModelUtils.runJobInTransactionWithResult(factory, studySession -> {
+                RealmModel realm = studySession.realms().getRealm(realmId);
+                studySession.getContext().setRealm(realm);
+                try {
+                    return check.checkTokensInStudy(studySession, realm, study, tokens, metrics);
+                } catch (IOException e) {
+                    log.info("Bulk check of {} tokens of study {} failed: {}", tokens.size(), study, e.toString());
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Bulk check of {} tokens of study {} failed", tokens.size(), study, e);
+            return null;
+        }
+    }
+
+    // 401 without a bearer token of the realm, 403 if it may not view the realm's users
+    private void requireViewUsers() {
+        AuthenticationManager.AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+        RealmModel realm = session.getContext().getRealm();
+        AdminAuth adminAuth = new AdminAuth(realm, auth.getToken(), auth.getUser(), auth.getClient());
+        AdminPermissions.evaluator(session, realm, adminAuth).users().requireView();
+    }
+
+    // Reads the items; false once the batch exceeds maxItems, without reading the rest
+    private static boolean readItems(InputStream body, long maxItems, List<String> studies, List<String> tokens) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Not an array");
+            }
+            JsonToken next;
+            while ((next = parser.nextToken()) == JsonToken.START_OBJECT) {
+                if (tokens.size() >= maxItems) {
+                    return false;
+                }
+                String study = null;
+                String token = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    String value = parser.nextToken() == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    parser.skipChildren();
+                    if ("study".equals(field)) {
+                        study = value;
+                    } else if ("token".equals(field)) {
+                        token = value;
+                    }
+                }
+                studies.add(study);
+                tokens.add(token);
+            }
+            if (next != JsonToken.END_ARRAY) {
+                throw new IOException("Not an array of objects");
+            }
+            return true;
+        }
+    }
+
+    private static void writeResult(JsonGenerator json, int index, String username, String error) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("index", index);
+        json.writeBooleanField("valid", username != null);
+        if (username != null) {
+            json.writeStringField("username", username);
+        } else if (error != null) {
+            json.writeStringField("error", error);
+        }
+        json.writeEndObject();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static Response error(Response.Status status, String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", message);
+        return Response.status(status).type(MediaType.APPLICATION_JSON).entity(body).build();
+    }
+
+    @Override
+    public void close() {
+        // Closes any open resources
+    }
+}
@@ -0,0 +1,45 @@
+package es.eucm.keycloak;
+
+import es.eucm.utils.BulkValidationConfig;
+
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resource.RealmResourceProviderFactory;
+
+/**
+ * Registers the Simva endpoints of this module under /realms/{realm}/simva.
+ */
+public class SimvaResourceProviderFactory implements RealmResourceProviderFactory {
+
+    public static final String PROVIDER_ID = "simva";
+
+    private BulkValidationConfig bulkConfig;
+
+    @Override
+    public RealmResourceProvider create(KeycloakSession session) {
+        return new SimvaResourceProvider(session, this.bulkConfig);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        //Initialize the provider
+        this.bulkConfig = new BulkValidationConfig();
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        // The Simva service is owned by CustomAuthenticatorFactory
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
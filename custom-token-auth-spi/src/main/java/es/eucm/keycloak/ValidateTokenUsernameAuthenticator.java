@@ -1,6 +1,9 @@
 package es.eucm.keycloak;
 
+import es.eucm.utils.AuthMetrics;
+import es.eucm.utils.RequestTrace;
 import es.eucm.utils.SimvaKeycloakCheck;
+import es.eucm.utils.TokenThrottledException;
 
 import org.keycloak.authentication.AuthenticationFlowContext;
 import org.keycloak.authentication.AuthenticationFlowError;
@@ -35,23 +38,43 @@ import static org.keycloak.authentication.authenticators.util.AuthenticatorUtils
 public class ValidateTokenUsernameAuthenticator extends AbstractDirectGrantAuthenticator {
     
     private final Logger logger = LoggerFactory.getLogger(ValidateTokenUsernameAuthenticator.class);
+    private static final RequestTrace trace = RequestTrace.getInstance();
     public static final String PROVIDER_ID = "direct-grant-validate-token-username";
 
-    private SimvaKeycloakCheck simvaKeycloakCheck;
-
     @Override
     public void authenticate(AuthenticationFlowContext context) {
-        this.simvaKeycloakCheck = new SimvaKeycloakCheck();
+        // Node-wide service owned by CustomAuthenticatorFactory; this instance is shared by all sessions
+        SimvaKeycloakCheck simvaKeycloakCheck = CustomAuthenticatorFactory.getSimvaKeycloakCheck(context.getSession());
+        AuthMetrics.Scope metrics = simvaKeycloakCheck.getMetrics().scope(context.getRealm().getName(), AuthMetrics.Flow.DIRECT_GRANT);
+        AuthMetrics.Outcome outcome = AuthMetrics.Outcome.ERROR;
+        long start = metrics.start(AuthMetrics.Stage.AUTHENTICATE);
+        try {
+            outcome = authenticate(context, simvaKeycloakCheck, metrics);
+        } finally {
+            metrics.stop(AuthMetrics.Stage.AUTHENTICATE, outcome, start);
+        }
+    }
+
+    private AuthMetrics.Outcome authenticate(AuthenticationFlowContext context, SimvaKeycloakCheck simvaKeycloakCheck, AuthMetrics.Scope metrics) {
+        AuthMetrics.Outcome failure = AuthMetrics.Outcome.INVALID;
         MultivaluedMap<String, String> inputData = context.getHttpRequest().getDecodedFormParameters();
-        logMap(inputData);
+        logRequest(inputData);
         String username = inputData.getFirst(AuthenticationManager.FORM_USERNAME);
         String study = inputData.getFirst("login_hint");
-        if (study != null) {
+        // Signed tokens name their study, the login hint is optional for them
+        if (study != null || simvaKeycloakCheck.isSignedToken(username)) {
             SimpleEntry<Boolean, String> validate;
             try {
-                validate = this.simvaKeycloakCheck.checkTokenInStudy(study, username);
+                validate = simvaKeycloakCheck.checkTokenInStudy(context.getSession(), context.getRealm(), study, username, metrics);
+            } catch(TokenThrottledException e) {
+                // Neither accepted nor rejected: the client should retry later
+                logger.info(e.toString());
+                Response challengeResponse = errorResponse(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), "temporarily_unavailable", "Too many failed attempts, try again later");
+                context.failure(AuthenticationFlowError.INVALID_CREDENTIALS, challengeResponse);
+                return AuthMetrics.Outcome.ERROR;
             } catch(IOException e) {
                 logger.info(e.toString());
+                failure = AuthMetrics.Outcome.ERROR;
                 validate = new SimpleEntry<>(false, null);
             }
             if(validate.getKey()) {
@@ -61,15 +84,16 @@ public class ValidateTokenUsernameAuthenticator extends AbstractDirectGrantAuthe
             String password = inputData.getFirst("password");
             Boolean valid;
             try {
-                valid = this.simvaKeycloakCheck.checkUsernamePassword(username, password);
+                valid = simvaKeycloakCheck.checkUsernamePassword(context.getSession(), context.getRealm(), username, password, metrics);
             } catch(IOException e) {
                 logger.info(e.toString());
+                failure = AuthMetrics.Outcome.ERROR;
                 valid=false;
             }
             if(valid) {
-                logger.info("Username valid");
+                logger.debug("Username valid");
             } else {
-                logger.info("Username not valid");
+                logger.debug("Username not valid");
             }
         }
         
@@ -77,19 +101,22 @@ public class ValidateTokenUsernameAuthenticator extends AbstractDirectGrantAuthe
             context.getEvent().error(Errors.USER_NOT_FOUND);
             Response challengeResponse = errorResponse(Response.Status.UNAUTHORIZED.getStatusCode(), "invalid_request", "Missing parameter: username");
             context.failure(AuthenticationFlowError.INVALID_USER, challengeResponse);
-            return;
+            return failure;
         }
         context.getEvent().detail(Details.USERNAME, username);
         context.getAuthenticationSession().setAuthNote(AbstractUsernameFormAuthenticator.ATTEMPTED_USERNAME, username);
 
         UserModel user = null;
+        long lookupStart = metrics.start(AuthMetrics.Stage.USER_LOOKUP);
         try {
             user = KeycloakModelUtils.findUserByNameOrEmail(context.getSession(), context.getRealm(), username);
         } catch (ModelDuplicateException mde) {
             ServicesLogger.LOGGER.modelDuplicateException(mde);
             Response challengeResponse = errorResponse(Response.Status.UNAUTHORIZED.getStatusCode(), "invalid_request", "Invalid user credentials");
             context.failure(AuthenticationFlowError.INVALID_USER, challengeResponse);
-            return;
+            return failure;
+        } finally {
+            metrics.stop(AuthMetrics.Stage.USER_LOOKUP, user != null, lookupStart);
         }
 
         if (user == null) {
@@ -97,7 +124,7 @@ public class ValidateTokenUsernameAuthenticator extends AbstractDirectGrantAuthe
             context.getEvent().error(Errors.USER_NOT_FOUND);
             Response challengeResponse = errorResponse(Response.Status.UNAUTHORIZED.getStatusCode(), "invalid_grant", "Invalid user credentials");
             context.failure(AuthenticationFlowError.INVALID_USER, challengeResponse);
-            return;
+            return failure;
         }
         
         String bruteForceError = getDisabledByBruteForceEventError(context, user);
@@ -107,7 +134,7 @@ public class ValidateTokenUsernameAuthenticator extends AbstractDirectGrantAuthe
             context.getEvent().error(bruteForceError);
             Response challengeResponse = errorResponse(Response.Status.UNAUTHORIZED.getStatusCode(), "invalid_grant", "Invalid user credentials");
             context.forceChallenge(challengeResponse);
-            return;
+            return failure;
         }
 
         if (!user.isEnabled()) {
@@ -115,31 +142,21 @@ public class ValidateTokenUsernameAuthenticator extends AbstractDirectGrantAuthe
             context.getEvent().error(Errors.USER_DISABLED);
             Response challengeResponse = errorResponse(Response.Status.BAD_REQUEST.getStatusCode(), "invalid_grant", "Account disabled");
             context.forceChallenge(challengeResponse);
-            return;
+            return failure;
         }
 
         context.setUser(user);
         context.success();
+        return AuthMetrics.Outcome.SUCCESS;
     }
 
-    public void logMap(MultivaluedMap<String, String> formData) {
-        StringBuilder logMessage = new StringBuilder();
-
-        // Iterate over each entry and append to the log message
-        for (String key : formData.keySet()) {
-            // For each key, get all values associated with it (since it's MultivaluedMap)
-            for (String value : formData.get(key)) {
-                logMessage.append(key).append("=").append(value).append(", ");
-            }
+    /**
+     * Traces the form parameters of a sampled token request, with credentials redacted.
+     */
+    public void logRequest(MultivaluedMap<String, String> formData) {
+        if (trace.isSampled()) {
+            trace.parameters("Form", formData);
         }
-
-        // Remove the trailing comma and space if present
-        if (logMessage.length() > 0) {
-            logMessage.setLength(logMessage.length() - 2); // Remove last ", "
-        }
-
-        // Log the message
-        logger.info("Data: {}", logMessage.toString());
     }
 
     @Override
@@ -0,0 +1,46 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class AdmissionConfig {
+    private static final Logger logger = Logger.getLogger(AdmissionConfig.class);
+
+    // Define configuration variables
+    private static final String MAX_CONCURRENT = "ADMISSION_MAX_CONCURRENT";
+    private static final String MAX_WAIT = "ADMISSION_MAX_WAIT";
+    private static final String MAX_QUEUE = "ADMISSION_MAX_QUEUE";
+
+    private long maxConcurrent;
+    private long maxWait;
+    private long maxQueue;
+
+    // Initialize the config from environment variables
+    public AdmissionConfig() {
+        this.maxConcurrent = EnvConfig.getLong(MAX_CONCURRENT, 24);
+        this.maxWait = EnvConfig.getLong(MAX_WAIT, 10000);
+        this.maxQueue = EnvConfig.getLong(MAX_QUEUE, 2000);
+    }
+
+    // Token validations running at once on this node (0 disables admission control)
+    public long getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // Milliseconds a queued validation may wait before the login is refused
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    // Validations queued on this node, all studies together, beyond which logins are refused at once
+    public long getMaxQueue() {
+        return maxQueue;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(MAX_CONCURRENT + ": " + maxConcurrent);
+        logger.info(MAX_WAIT + ": " + maxWait);
+        logger.info(MAX_QUEUE + ": " + maxQueue);
+    }
+}
@@ -0,0 +1,307 @@
+package es.eucm.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control of the Simva-bound token validations of this node. At most
+ * ADMISSION_MAX_CONCURRENT validations run at once; the others wait in one FIFO queue per
+ * study, and every freed slot goes to the next study in turn, so a class logging in all at once
+ * cannot starve the logins of other studies. A validation still queued after ADMISSION_MAX_WAIT,
+ * or arriving when ADMISSION_MAX_QUEUE validations are already queued, is refused with a
+ * pre-built {@link DownstreamUnavailableException}, which the authenticators turn into their
+ * usual login error. Queue depth and waiting time are published per study.
+ * Only resolved studies (those whose groups are cached) get a queue and meters of their own,
+ * registered the first time they are seen and removed once their queue has been idle for
+ * {@value #IDLE_MINUTES} minutes. Every other study id, e.g. an arbitrary login_hint, shares the
+ * single "other" queue, so unknown ids cannot grow the heap nor the metrics' cardinality.
+ */
+public class AdmissionController {
+    public static final String QUEUE_GAUGE = "simva.admission.queue.depth";
+    public static final String WAIT_TIMER = "simva.admission.wait";
+    public static final String IN_FLIGHT_GAUGE = "simva.admission.in.flight";
+    // Study tag of the queue shared by unresolved studies
+    public static final String OTHER = "other";
+    static final long IDLE_MINUTES = 10;
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(IDLE_MINUTES);
+
+    private static final class Waiter {
+        final Condition admitted;
+        boolean granted;
+
+        Waiter(Condition admitted) {
+            this.admitted = admitted;
+        }
+    }
+
+    private final class StudyQueue {
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        final AtomicInteger depth = new AtomicInteger();
+        final List<Meter> studyMeters = new ArrayList<>();
+        final Timer admittedWait;
+        final Timer rejectedWait;
+        // Guarded by lock
+        long lastUsed;
+
+        StudyQueue(String study) {
+            studyMeters.add(Gauge.builder(QUEUE_GAUGE, depth, AtomicInteger::get)
+                .description("Token validations waiting for admission")
+                .tags("study", study)
+                .strongReference(true)
+                .register(registry));
+            this.admittedWait = waitTimer(study, "admitted");
+            this.rejectedWait = waitTimer(study, "rejected");
+            meters.addAll(studyMeters);
+        }
+
+        private Timer waitTimer(String study, String outcome) {
+            Timer timer = Timer.builder(WAIT_TIMER)
+                .description("Time token validations waited for admission")
+                .tags("study", study, "outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+            studyMeters.add(timer);
+            return timer;
+        }
+
+        void removeMeters() {
+            for (Meter meter : studyMeters) {
+                registry.remove(meter);
+            }
+            meters.removeAll(studyMeters);
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final List<Meter> meters = new CopyOnWriteArrayList<>();
+    private final int maxConcurrent;
+    private final long maxWaitNanos;
+    private final long maxQueue;
+    private final DownstreamUnavailableException waitExceeded;
+    private final DownstreamUnavailableException queueFull;
+
+    // Guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, StudyQueue> studies = new HashMap<>();
+    private StudyQueue other;
+    private long lastSweep = System.nanoTime();
+    // Studies with waiters, in the order their next waiter is served
+    private final ArrayDeque<StudyQueue> turns = new ArrayDeque<>();
+    private volatile int available;
+    private int queued;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdmissionController(AdmissionConfig config, MeterRegistry registry) {
+        this.registry = registry;
+        this.maxConcurrent = (int) Math.max(0, config.getMaxConcurrent());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getMaxWait()));
+        this.maxQueue = Math.max(0, config.getMaxQueue());
+        this.available = this.maxConcurrent;
+        this.waitExceeded = new DownstreamUnavailableException("Token validation not admitted within " + config.getMaxWait() + " ms");
+        this.queueFull = new DownstreamUnavailableException("Token validation queue is full");
+        if (isEnabled()) {
+            meters.add(Gauge.builder(IN_FLIGHT_GAUGE, this, AdmissionController::getInFlight)
+                .description("Token validations currently admitted")
+                .register(registry));
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.maxConcurrent > 0;
+    }
+
+    /**
+     * Waits for a slot for a token validation of the given study. Every successful call must be
+     * followed by exactly one {@link #release()}.
+     * @param study study id, or null for logins without one
+     * @param resolved whether the study is known to exist (its groups are cached); the others share one queue
+     * @throws IOException if the queue is full, the wait runs out or the thread is interrupted
+     */
+    public void acquire(String study, boolean resolved) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        StudyQueue queue;
+        lock.lock();
+        try {
+            queue = queueOf(study, resolved, start);
+            if (available > 0 && turns.isEmpty()) {
+                // Nobody waiting: admitted at once
+                available--;
+            } else if (queued >= maxQueue) {
+                rejected.increment();
+                queue.rejectedWait.record(0, TimeUnit.NANOSECONDS);
+                throw queueFull;
+            } else {
+                await(queue, start);
+            }
+        } finally {
+            lock.unlock();
+        }
+        admitted.increment();
+        queue.admittedWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    // Queue of a study, created on first use; called with the lock held
+    private StudyQueue queueOf(String study, boolean resolved, long now) {
+        if (now - lastSweep > IDLE_NANOS) {
+            dropIdleQueues(now);
+        }
+        StudyQueue queue;
+        if (study == null || !resolved || OTHER.equals(study)) {
+            if (other == null) {
+                other = new StudyQueue(OTHER);
+            }
+            queue = other;
+        } else {
+            queue = studies.get(study);
+            if (queue == null) {
+                queue = new StudyQueue(study);
+                studies.put(study, queue);
+            }
+        }
+        queue.lastUsed = now;
+        return queue;
+    }
+
+    // Forgets the studies whose queue has been empty and unused for IDLE_MINUTES; called with the lock held
+    private void dropIdleQueues(long now) {
+        lastSweep = now;
+        for (Iterator<StudyQueue> it = studies.values().iterator(); it.hasNext(); ) {
+            StudyQueue queue = it.next();
+            if (queue.waiters.isEmpty() && now - queue.lastUsed > IDLE_NANOS) {
+                it.remove();
+                queue.removeMeters();
+            }
+        }
+    }
+
+    // Queues the caller and waits for a slot handed over by release(); called with the lock held
+    private void await(StudyQueue queue, long start) throws IOException {
+        Waiter waiter = new Waiter(lock.newCondition());
+        if (queue.waiters.isEmpty()) {
+            turns.addLast(queue);
+        }
+        queue.waiters.addLast(waiter);
+        queue.depth.incrementAndGet();
+        queued++;
+        delayed.increment();
+        long remaining = maxWaitNanos;
+        boolean interrupted = false;
+        while (!waiter.granted && remaining > 0 && !interrupted) {
+            try {
+                remaining = waiter.admitted.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (waiter.granted) {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        queue.waiters.remove(waiter);
+        queue.depth.decrementAndGet();
+        queued--;
+        if (queue.waiters.isEmpty()) {
+            turns.remove(queue);
+        }
+        rejected.increment();
+        queue.rejectedWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for admission");
+        }
+        throw waitExceeded;
+    }
+
+    /**
+     * Frees the slot of a finished validation, handing it to the head of the next study's queue.
+     */
+    public void release() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            StudyQueue next = turns.pollFirst();
+            if (next == null) {
+                available++;
+                return;
+            }
+            Waiter waiter = next.waiters.pollFirst();
+            next.depth.decrementAndGet();
+            queued--;
+            if (!next.waiters.isEmpty()) {
+                turns.addLast(next);
+            }
+            waiter.granted = true;
+            waiter.admitted.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        return this.maxConcurrent - this.available;
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getDelayed() {
+        return delayed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // Studies with a queue of their own
+    public int getStudyQueues() {
+        lock.lock();
+        try {
+            return studies.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String stats() {
+        return "admission: inFlight=" + getInFlight() + ", admitted=" + getAdmitted()
+            + ", delayed=" + getDelayed() + ", rejected=" + getRejected() + ", studyQueues=" + getStudyQueues();
+    }
+
+    public void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+    }
+}
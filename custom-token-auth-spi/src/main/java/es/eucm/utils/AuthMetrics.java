@@ -0,0 +1,161 @@
+package es.eucm.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-stage latency, outcome and in-flight metrics of the token authenticators, tagged by realm
+ * and flow and published to a Micrometer registry (Keycloak's global registry backs its
+ * metrics endpoint). The meters of a realm and flow are registered once, on first use; recording
+ * afterwards is one map lookup, an atomic counter update and a histogram update, with no locks
+ * and no allocation.
+ */
+public class AuthMetrics {
+    public static final String STAGE_TIMER = "simva.auth.stage";
+    public static final String IN_FLIGHT_GAUGE = "simva.auth.stage.in.flight";
+
+    public enum Flow {
+        BROWSER("browser"),
+        DIRECT_GRANT("direct-grant"),
+        // Bulk checks of Simva's admin tools, at /realms/{realm}/simva/tokens/validate
+        BULK("bulk");
+
+        final String tag;
+
+        Flow(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum Stage {
+        // Whole authenticator step, as seen by Keycloak
+        AUTHENTICATE("authenticate"),
+        // Password grant or in-process credential check
+        CREDENTIALS("credentials"),
+        // Study groups lookup (cache or Simva GET)
+        GROUPS("groups"),
+        // Logout of the session opened by a remote password grant
+        LOGOUT("logout"),
+        // User model lookup after a successful check
+        USER_LOOKUP("user_lookup"),
+        // Offline verification of a Simva-signed token
+        SIGNED_TOKEN("signed_token");
+
+        final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum Outcome {
+        SUCCESS("success"),
+        INVALID("invalid"),
+        ERROR("io_error");
+
+        final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final Flow[] FLOWS = Flow.values();
+
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, Scope[]> realms = new ConcurrentHashMap<>();
+    private final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the meters of a realm and flow, registering them on first use.
+     */
+    public Scope scope(String realm, Flow flow) {
+        Scope[] scopes = realms.get(realm);
+        if (scopes == null) {
+            scopes = realms.computeIfAbsent(realm, this::register);
+        }
+        return scopes[flow.ordinal()];
+    }
+
+    private Scope[] register(String realm) {
+        Scope[] scopes = new Scope[FLOWS.length];
+        for (Flow flow : FLOWS) {
+            scopes[flow.ordinal()] = new Scope(realm, flow);
+        }
+        return scopes;
+    }
+
+    public void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+        realms.clear();
+    }
+
+    /**
+     * Meters of one realm and flow. Usage: {@code long start = scope.start(stage);} then
+     * {@code scope.stop(stage, outcome, start);} exactly once.
+     */
+    public final class Scope {
+        private final Timer[] timers = new Timer[STAGES.length * OUTCOMES.length];
+        private final AtomicInteger[] inFlight = new AtomicInteger[STAGES.length];
+
+        private Scope(String realm, Flow flow) {
+            for (Stage stage : STAGES) {
+                AtomicInteger gauge = new AtomicInteger();
+                inFlight[stage.ordinal()] = gauge;
+                meters.add(Gauge.builder(IN_FLIGHT_GAUGE, gauge, AtomicInteger::get)
+                    .description("Authentication stages currently running")
+                    .tags("realm", realm, "flow", flow.tag, "stage", stage.tag)
+                    .strongReference(true)
+                    .register(registry));
+                for (Outcome outcome : OUTCOMES) {
+                    Timer timer = Timer.builder(STAGE_TIMER)
+                        .description("Latency of authentication stages by outcome")
+                        .tags("realm", realm, "flow", flow.tag, "stage", stage.tag, "outcome", outcome.tag)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry);
+                    timers[index(stage, outcome)] = timer;
+                    meters.add(timer);
+                }
+            }
+        }
+
+        public long start(Stage stage) {
+            inFlight[stage.ordinal()].incrementAndGet();
+            return System.nanoTime();
+        }
+
+        public void stop(Stage stage, Outcome outcome, long start) {
+            long elapsed = System.nanoTime() - start;
+            inFlight[stage.ordinal()].decrementAndGet();
+            timers[index(stage, outcome)].record(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        public void stop(Stage stage, boolean success, long start) {
+            stop(stage, success ? Outcome.SUCCESS : Outcome.INVALID, start);
+        }
+
+        private int index(Stage stage, Outcome outcome) {
+            return stage.ordinal() * OUTCOMES.length + outcome.ordinal();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class BulkValidationConfig {
+    private static final Logger logger = Logger.getLogger(BulkValidationConfig.class);
+
+    // Define configuration variables
+    private static final String MAX_ITEMS = "SIMVA_BULK_VALIDATION_MAX_ITEMS";
+
+    private long maxItems;
+
+    // Initialize the config from environment variables
+    public BulkValidationConfig() {
+        this.maxItems = EnvConfig.getLong(MAX_ITEMS, 5000);
+    }
+
+    // Whether /realms/{realm}/simva/tokens/validate accepts batches
+    public boolean isEnabled() {
+        return this.maxItems > 0;
+    }
+
+    // Largest batch accepted; 0 disables the endpoint
+    public long getMaxItems() {
+        return this.maxItems;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(MAX_ITEMS + ": " + this.maxItems);
+    }
+}
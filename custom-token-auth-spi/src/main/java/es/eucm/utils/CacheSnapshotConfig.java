@@ -0,0 +1,58 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+public class CacheSnapshotConfig {
+    private static final Logger logger = Logger.getLogger(CacheSnapshotConfig.class);
+
+    // Define configuration variables
+    private static final String SNAPSHOT_FILE = "SIMVA_CACHE_SNAPSHOT_FILE";
+    private static final String SNAPSHOT_INTERVAL = "SIMVA_CACHE_SNAPSHOT_INTERVAL";
+    private static final String SNAPSHOT_MAX_AGE = "SIMVA_CACHE_SNAPSHOT_MAX_AGE";
+
+    private String file;
+    private long interval;
+    private long maxAge;
+
+    /**
+     * Initialize the config from environment variables
+     * @param groupsCacheTtl seconds a study group list is served from cache, the default max age
+     */
+    public CacheSnapshotConfig(long groupsCacheTtl) {
+        String value = System.getenv(SNAPSHOT_FILE);
+        this.file = value != null && !value.isEmpty() ? value : null;
+        this.interval = EnvConfig.getLong(SNAPSHOT_INTERVAL, 300000);
+        this.maxAge = EnvConfig.getLong(SNAPSHOT_MAX_AGE, TimeUnit.SECONDS.toMillis(groupsCacheTtl));
+    }
+
+    // Whether the study groups cache is saved to and restored from a local file
+    public boolean isSnapshot() {
+        return this.file != null;
+    }
+
+    // Path of the snapshot file; unset disables snapshots. The file holds participant tokens, which
+    // are passwords: it is written readable by its owner only, and not restored when others can read it
+    public String getFile() {
+        return this.file;
+    }
+
+    // Milliseconds between scheduled snapshots; 0 only saves on shutdown
+    public long getInterval() {
+        return this.interval;
+    }
+
+    // Milliseconds after which a snapshot, or a study in it, is too old to restore; the groups cache TTL by default
+    public long getMaxAge() {
+        return this.maxAge;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(SNAPSHOT_FILE + ": " + this.file);
+        logger.info(SNAPSHOT_INTERVAL + ": " + this.interval);
+        logger.info(SNAPSHOT_MAX_AGE + ": " + this.maxAge);
+    }
+}
@@ -0,0 +1,49 @@
+package es.eucm.utils;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HTTP validators (ETag / Last-Modified) of a cached resource, replayed as
+ * If-None-Match / If-Modified-Since to revalidate it with a conditional GET.
+ */
+public final class CacheValidators {
+    private final String etag;
+    private final String lastModified;
+
+    public CacheValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Reads the validators of a response, keeping the previous ones the response does not repeat
+     * (a 304 answer may omit them).
+     */
+    public static CacheValidators from(Response response, CacheValidators previous) {
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (previous != null) {
+            etag = etag != null ? etag : previous.etag;
+            lastModified = lastModified != null ? lastModified : previous.lastModified;
+        }
+        return etag == null && lastModified == null ? null : new CacheValidators(etag, lastModified);
+    }
+
+    public void apply(Request.Builder builder) {
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+}
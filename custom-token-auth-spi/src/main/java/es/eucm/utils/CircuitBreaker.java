@@ -0,0 +1,163 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Count-based circuit breaker. The outcome of the last {@code window} calls is kept in a ring
+ * buffer; when enough calls have been recorded and either the failure rate or the slow-call rate
+ * reaches its threshold, the breaker opens and rejects calls for {@code openDuration}. It then lets
+ * a few trial calls through (half-open) and closes again only if they succeed.
+ * Permission checks read a volatile state and never lock.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final int failureRate;
+    private final int slowCallRate;
+    private final long slowCallNanos;
+    private final int minCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final byte[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private int halfOpenResults;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+    public CircuitBreaker(String name, int window, int minCalls, int failureRate, int slowCallRate,
+                          long slowCallMillis, long openMillis, int halfOpenCalls) {
+        this.name = name;
+        this.outcomes = new byte[Math.max(1, window)];
+        this.minCalls = Math.max(1, Math.min(minCalls, this.outcomes.length));
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, openMillis));
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    public CircuitBreaker(String name, DownstreamGuardConfig config) {
+        this(name, (int) config.getWindow(), (int) config.getMinCalls(), (int) config.getFailureRate(),
+            (int) config.getSlowCallRate(), config.getSlowCallDuration(), config.getOpenDuration(),
+            (int) config.getHalfOpenCalls());
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return whether a call may be attempted now
+     */
+    public boolean tryAcquirePermission() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openUntil < 0) {
+                return false;
+            }
+            toHalfOpen();
+        }
+        return halfOpenPermits.getAndDecrement() > 0;
+    }
+
+    // Gives back a permission that was acquired but not used for a call
+    public void releasePermission() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos);
+    }
+
+    public void onError(long durationNanos) {
+        record(true, durationNanos);
+    }
+
+    private synchronized void toHalfOpen() {
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            halfOpenResults = 0;
+            resetWindow();
+            halfOpenPermits.set(halfOpenCalls);
+            state = State.HALF_OPEN;
+            logger.info("Circuit breaker " + name + " half-open");
+        }
+    }
+
+    private synchronized void record(boolean failed, long durationNanos) {
+        byte outcome = (byte) ((failed ? FAILURE : 0) | (durationNanos >= slowCallNanos ? SLOW : 0));
+        if (state == State.OPEN) {
+            return;
+        }
+        if (recorded == outcomes.length) {
+            byte evicted = outcomes[next];
+            if ((evicted & FAILURE) != 0) {
+                failures--;
+            }
+            if ((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        if ((outcome & FAILURE) != 0) {
+            failures++;
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls++;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenResults >= halfOpenCalls) {
+                if (thresholdReached(halfOpenResults)) {
+                    open();
+                } else {
+                    resetWindow();
+                    state = State.CLOSED;
+                    logger.info("Circuit breaker " + name + " closed");
+                }
+            }
+        } else if (recorded >= minCalls && thresholdReached(recorded)) {
+            open();
+        }
+    }
+
+    private boolean thresholdReached(int calls) {
+        return failures * 100 >= failureRate * calls || (slowCallRate < 100 && slowCalls * 100 >= slowCallRate * calls);
+    }
+
+    private void open() {
+        openUntil = System.nanoTime() + openNanos;
+        state = State.OPEN;
+        logger.warn("Circuit breaker " + name + " opened: " + failures + " failures, " + slowCalls
+            + " slow calls in the last " + recorded + " calls");
+    }
+
+    private void resetWindow() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
@@ -0,0 +1,65 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class ClusterCacheConfig {
+    private static final Logger logger = Logger.getLogger(ClusterCacheConfig.class);
+
+    // Define configuration variables
+    private static final String CLUSTER_CACHE = "SIMVA_CLUSTER_CACHE";
+    private static final String CLUSTER_CACHE_NAME = "SIMVA_CLUSTER_CACHE_NAME";
+    private static final String CLUSTER_CACHE_MODE = "SIMVA_CLUSTER_CACHE_MODE";
+    private static final String CLUSTER_CACHE_OWNERS = "SIMVA_CLUSTER_CACHE_OWNERS";
+
+    // Cache modes
+    public static final String MODE_REPLICATED = "replicated";
+    public static final String MODE_DISTRIBUTED = "distributed";
+
+    private boolean clusterCache;
+    private String name;
+    private String mode;
+    private long owners;
+
+    // Initialize the config from environment variables
+    public ClusterCacheConfig() {
+        this.clusterCache = "true".equalsIgnoreCase(System.getenv(CLUSTER_CACHE));
+        this.name = System.getenv(CLUSTER_CACHE_NAME);
+        if (this.name == null || this.name.isEmpty()) {
+            this.name = "simva-study-groups";
+        }
+        this.mode = System.getenv(CLUSTER_CACHE_MODE);
+        if (this.mode == null || this.mode.isEmpty()) {
+            this.mode = MODE_REPLICATED;
+        }
+        this.owners = EnvConfig.getLong(CLUSTER_CACHE_OWNERS, 2);
+    }
+
+    // Whether study groups are shared by the nodes through Keycloak's Infinispan
+    public boolean isClusterCache() {
+        return this.clusterCache;
+    }
+
+    // Name of the dedicated Infinispan cache
+    public String getName() {
+        return this.name;
+    }
+
+    // Every node holds every study unless "distributed" is requested
+    public boolean isDistributed() {
+        return MODE_DISTRIBUTED.equalsIgnoreCase(this.mode);
+    }
+
+    // Nodes holding each study in distributed mode
+    public long getOwners() {
+        return this.owners;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(CLUSTER_CACHE + ": " + this.clusterCache);
+        logger.info(CLUSTER_CACHE_NAME + ": " + this.name);
+        logger.info(CLUSTER_CACHE_MODE + ": " + this.mode);
+        logger.info(CLUSTER_CACHE_OWNERS + ": " + this.owners);
+    }
+}
@@ -0,0 +1,39 @@
+package es.eucm.utils;
+
+/**
+ * Outcome of a conditional GET: either a fresh body, or "not modified" when the copy
+ * identified by the validators sent is still current.
+ */
+public final class ConditionalResponse<T> {
+    private final T body;
+    private final boolean notModified;
+    private final CacheValidators validators;
+
+    private ConditionalResponse(T body, boolean notModified, CacheValidators validators) {
+        this.body = body;
+        this.notModified = notModified;
+        this.validators = validators;
+    }
+
+    public static <T> ConditionalResponse<T> modified(T body, CacheValidators validators) {
+        return new ConditionalResponse<>(body, false, validators);
+    }
+
+    public static <T> ConditionalResponse<T> notModified(CacheValidators validators) {
+        return new ConditionalResponse<>(null, true, validators);
+    }
+
+    // Null when not modified
+    public T getBody() {
+        return body;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    // Validators to send on the next revalidation, or null if the server gave none
+    public CacheValidators getValidators() {
+        return validators;
+    }
+}
@@ -0,0 +1,121 @@
+package es.eucm.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Isolates the calls to one downstream service behind a circuit breaker and a bulkhead
+ * bounding the calls in flight. Rejected calls fail immediately with a pre-built
+ * {@link DownstreamUnavailableException}, which callers handle like any other I/O error.
+ */
+public class DownstreamGuard {
+    @FunctionalInterface
+    public interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    private final String name;
+    private final CircuitBreaker breaker;
+    private final Semaphore bulkhead;
+    private final int maxConcurrent;
+    private final long maxWaitNanos;
+    private final DownstreamUnavailableException openException;
+    private final DownstreamUnavailableException fullException;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejectedOpen = new LongAdder();
+    private final LongAdder rejectedFull = new LongAdder();
+
+    public DownstreamGuard(String name, DownstreamGuardConfig config) {
+        this.name = name;
+        this.breaker = new CircuitBreaker(name, config);
+        this.maxConcurrent = (int) Math.max(1, config.getMaxConcurrent());
+        this.bulkhead = new Semaphore(this.maxConcurrent);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getMaxWait()));
+        this.openException = new DownstreamUnavailableException(name + " circuit breaker is open");
+        this.fullException = new DownstreamUnavailableException(name + " bulkhead is full");
+    }
+
+    public <T> T call(IOCallable<T> callable) throws IOException {
+        if (!breaker.tryAcquirePermission()) {
+            rejectedOpen.increment();
+            throw openException;
+        }
+        if (!acquireSlot()) {
+            breaker.releasePermission();
+            rejectedFull.increment();
+            throw fullException;
+        }
+        calls.increment();
+        long start = System.nanoTime();
+        try {
+            T result = callable.call();
+            breaker.onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            if (isFailure(e)) {
+                failures.increment();
+                breaker.onError(System.nanoTime() - start);
+            } else {
+                breaker.onSuccess(System.nanoTime() - start);
+            }
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private boolean acquireSlot() throws IOException {
+        if (maxWaitNanos == 0) {
+            return bulkhead.tryAcquire();
+        }
+        try {
+            return bulkhead.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + name);
+        }
+    }
+
+    // Client errors (4xx) say nothing about the health of the downstream
+    private static boolean isFailure(Exception e) {
+        return !(e instanceof HttpStatusException) || ((HttpStatusException) e).isServerError();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker.State getState() {
+        return breaker.getState();
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - bulkhead.availablePermits();
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRejectedOpenCount() {
+        return rejectedOpen.sum();
+    }
+
+    public long getRejectedFullCount() {
+        return rejectedFull.sum();
+    }
+
+    public String stats() {
+        return name + ": state=" + getState() + ", calls=" + getCallCount() + ", failures=" + getFailureCount()
+            + ", rejectedOpen=" + getRejectedOpenCount() + ", rejectedFull=" + getRejectedFullCount();
+    }
+}
@@ -0,0 +1,102 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class DownstreamGuardConfig {
+    private static final Logger logger = Logger.getLogger(DownstreamGuardConfig.class);
+
+    // Define configuration variables, prefixed with the downstream name (e.g. SIMVA_API_BREAKER_WINDOW)
+    private static final String FAILURE_RATE = "_BREAKER_FAILURE_RATE";
+    private static final String SLOW_CALL_RATE = "_BREAKER_SLOW_CALL_RATE";
+    private static final String SLOW_CALL_DURATION = "_BREAKER_SLOW_CALL_DURATION";
+    private static final String WINDOW = "_BREAKER_WINDOW";
+    private static final String MIN_CALLS = "_BREAKER_MIN_CALLS";
+    private static final String OPEN_DURATION = "_BREAKER_OPEN_DURATION";
+    private static final String HALF_OPEN_CALLS = "_BREAKER_HALF_OPEN_CALLS";
+    private static final String MAX_CONCURRENT = "_BULKHEAD_MAX_CONCURRENT";
+    private static final String MAX_WAIT = "_BULKHEAD_MAX_WAIT";
+
+    private final String prefix;
+    private long failureRate;
+    private long slowCallRate;
+    private long slowCallDuration;
+    private long window;
+    private long minCalls;
+    private long openDuration;
+    private long halfOpenCalls;
+    private long maxConcurrent;
+    private long maxWait;
+
+    // Initialize the config from environment variables
+    public DownstreamGuardConfig(String prefix) {
+        this.prefix = prefix;
+        this.failureRate = EnvConfig.getLong(prefix + FAILURE_RATE, 50);
+        this.slowCallRate = EnvConfig.getLong(prefix + SLOW_CALL_RATE, 100);
+        this.slowCallDuration = EnvConfig.getLong(prefix + SLOW_CALL_DURATION, 3000);
+        this.window = EnvConfig.getLong(prefix + WINDOW, 20);
+        this.minCalls = EnvConfig.getLong(prefix + MIN_CALLS, 10);
+        this.openDuration = EnvConfig.getLong(prefix + OPEN_DURATION, 10000);
+        this.halfOpenCalls = EnvConfig.getLong(prefix + HALF_OPEN_CALLS, 3);
+        this.maxConcurrent = EnvConfig.getLong(prefix + MAX_CONCURRENT, 32);
+        this.maxWait = EnvConfig.getLong(prefix + MAX_WAIT, 0);
+    }
+
+    // Percentage of failed calls in the window that opens the breaker
+    public long getFailureRate() {
+        return failureRate;
+    }
+
+    // Percentage of slow calls in the window that opens the breaker (100 effectively disables it)
+    public long getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    // Milliseconds above which a call counts as slow
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    // Number of most recent calls the rates are computed on
+    public long getWindow() {
+        return window;
+    }
+
+    // Calls needed in the window before the rates are evaluated
+    public long getMinCalls() {
+        return minCalls;
+    }
+
+    // Milliseconds the breaker stays open before letting trial calls through
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    // Trial calls allowed while half-open
+    public long getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    // Concurrent in-flight calls allowed by the bulkhead
+    public long getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // Milliseconds a call waits for a bulkhead slot (0 fails fast)
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(prefix + FAILURE_RATE + ": " + failureRate);
+        logger.info(prefix + SLOW_CALL_RATE + ": " + slowCallRate);
+        logger.info(prefix + SLOW_CALL_DURATION + ": " + slowCallDuration);
+        logger.info(prefix + WINDOW + ": " + window);
+        logger.info(prefix + MIN_CALLS + ": " + minCalls);
+        logger.info(prefix + OPEN_DURATION + ": " + openDuration);
+        logger.info(prefix + HALF_OPEN_CALLS + ": " + halfOpenCalls);
+        logger.info(prefix + MAX_CONCURRENT + ": " + maxConcurrent);
+        logger.info(prefix + MAX_WAIT + ": " + maxWait);
+    }
+}
@@ -0,0 +1,20 @@
+package es.eucm.utils;
+
+import java.io.IOException;
+
+/**
+ * Raised without calling a downstream service because its circuit breaker is open or its
+ * bulkhead is full. Instances are pre-built and carry no stack trace, so rejecting a call
+ * costs no allocation.
+ */
+public class DownstreamUnavailableException extends IOException {
+
+    public DownstreamUnavailableException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,24 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public final class EnvConfig {
+    private static final Logger logger = Logger.getLogger(EnvConfig.class);
+
+    private EnvConfig() {
+    }
+
+    // Read a numeric environment variable, falling back to the default when unset or malformed
+    public static long getLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn(name + ": invalid value '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
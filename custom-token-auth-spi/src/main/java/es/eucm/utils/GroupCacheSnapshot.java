@@ -0,0 +1,281 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Local snapshot of the study groups cache, so a restarted node serves logins from warm data
+ * instead of loading every study from Simva at once. The snapshot is saved every
+ * SIMVA_CACHE_SNAPSHOT_INTERVAL ms and on shutdown, to a temporary file moved over the previous
+ * one, and restored on startup through a read-only memory mapping. Restored studies keep their
+ * validators and are revalidated against Simva lazily, on their first lookup.
+ * Layout: magic, version, study count, then per study its id, load time, validators and groups
+ * with their participants; a CRC32 of all of it closes the file. A truncated, corrupt or
+ * foreign file is ignored.
+ * Participant tokens are the participants' passwords, so the file is a secret: it is created
+ * readable and writable by its owner only (0600), and a file that other users can read or write
+ * is not restored. Keep it out of backups and shared volumes.
+ */
+public class GroupCacheSnapshot {
+    private static final Logger logger = Logger.getLogger(GroupCacheSnapshot.class);
+
+    private static final int MAGIC = 0x53474353;
+    private static final int VERSION = 1;
+    private static final int NONE = -1;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final Path file;
+    private final long intervalMillis;
+    private final long maxAgeMillis;
+    private final StudyGroupCache cache;
+    private final ScheduledExecutorService scheduler;
+
+    public GroupCacheSnapshot(CacheSnapshotConfig config, StudyGroupCache cache) {
+        this.file = Paths.get(config.getFile());
+        this.intervalMillis = config.getInterval();
+        this.maxAgeMillis = config.getMaxAge();
+        this.cache = cache;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simva-groups-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Restores the studies of the snapshot younger than SIMVA_CACHE_SNAPSHOT_MAX_AGE.
+     * @param restored notified with each restored study and its groups
+     * @return number of studies restored
+     */
+    public int restore(BiConsumer<String, List<SimvaGroup>> restored) {
+        Map<String, SharedGroups> studies;
+        try {
+            checkPrivate(file);
+            studies = read(file);
+        } catch (NoSuchFileException e) {
+            logger.info("No study groups snapshot at " + file);
+            return 0;
+        } catch (IOException e) {
+            logger.warn("Ignoring study groups snapshot " + file + ": " + e.getMessage());
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Map.Entry<String, SharedGroups> e : studies.entrySet()) {
+            SharedGroups copy = e.getValue();
+            if (now - copy.getLoadedAt() <= maxAgeMillis && cache.restore(e.getKey(), copy)) {
+                restored.accept(e.getKey(), copy.getGroups());
+                count++;
+            }
+        }
+        logger.info("Restored " + count + " of " + studies.size() + " studies from snapshot " + file);
+        return count;
+    }
+
+    // Schedules the periodic snapshots
+    public void start() {
+        if (intervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::saveQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void save() throws IOException {
+        Map<String, SharedGroups> studies = cache.export();
+        if (!studies.isEmpty()) {
+            write(file, studies);
+            logger.debug("Saved " + studies.size() + " studies to snapshot " + file);
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to save study groups snapshot " + file + ": " + e);
+        }
+    }
+
+    // Stops the schedule and saves a last snapshot; call before closing the cache
+    public void close() {
+        scheduler.shutdownNow();
+        saveQuietly();
+    }
+
+    static void write(Path file, Map<String, SharedGroups> studies) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = isPosix(dir)
+            ? Files.createTempFile(dir, file.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute(OWNER_ONLY))
+            : Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(tmp.toFile());
+                 BufferedOutputStream buffered = new BufferedOutputStream(fileOut, 64 * 1024)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(studies.size());
+                for (Map.Entry<String, SharedGroups> e : studies.entrySet()) {
+                    SharedGroups copy = e.getValue();
+                    CacheValidators validators = copy.getValidators();
+                    writeString(out, e.getKey());
+                    out.writeLong(copy.getLoadedAt());
+                    writeString(out, validators != null ? validators.getEtag() : null);
+                    writeString(out, validators != null ? validators.getLastModified() : null);
+                    out.writeInt(copy.getGroups().size());
+                    for (SimvaGroup group : copy.getGroups()) {
+                        writeString(out, group.getId());
+                        writeString(out, group.getName());
+                        List<String> participants = group.getParticipants();
+                        out.writeInt(participants != null ? participants.size() : NONE);
+                        if (participants != null) {
+                            for (String participant : participants) {
+                                writeString(out, participant);
+                            }
+                        }
+                    }
+                }
+                out.flush();
+                // The checksum itself is left out of the CRC
+                int checksum = (int) crc.getValue();
+                buffered.write(checksum >>> 24);
+                buffered.write(checksum >>> 16);
+                buffered.write(checksum >>> 8);
+                buffered.write(checksum);
+                buffered.flush();
+                fileOut.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    // Refuses a snapshot other users can read or write
+    private static void checkPrivate(Path file) throws IOException {
+        if (!isPosix(file)) {
+            return;
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+        if (!OWNER_ONLY.containsAll(permissions)) {
+            throw new IOException("readable by other users (" + PosixFilePermissions.toString(permissions) + "), expected rw-------");
+        }
+    }
+
+    static Map<String, SharedGroups> read(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        int size = buffer.limit();
+        if (size < 16) {
+            throw new IOException("truncated file");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, size - 4));
+        if ((int) crc.getValue() != buffer.getInt(size - 4)) {
+            throw new IOException("checksum mismatch");
+        }
+        buffer.limit(size - 4);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a study groups snapshot, or an unsupported version");
+            }
+            int studyCount = buffer.getInt();
+            Map<String, SharedGroups> studies = new HashMap<>();
+            for (int i = 0; i < studyCount; i++) {
+                String study = readString(buffer);
+                long loadedAt = buffer.getLong();
+                String etag = readString(buffer);
+                String lastModified = readString(buffer);
+                int groupCount = buffer.getInt();
+                List<SimvaGroup> groups = new ArrayList<>(Math.min(groupCount, buffer.remaining()));
+                for (int g = 0; g < groupCount; g++) {
+                    String id = readString(buffer);
+                    String name = readString(buffer);
+                    int participantCount = buffer.getInt();
+                    List<String> participants = null;
+                    if (participantCount != NONE) {
+                        participants = new ArrayList<>(Math.min(participantCount, buffer.remaining()));
+                        for (int p = 0; p < participantCount; p++) {
+                            participants.add(readString(buffer));
+                        }
+                    }
+                    groups.add(new SimvaGroup(id, name, participants));
+                }
+                CacheValidators validators = etag == null && lastModified == null ? null : new CacheValidators(etag, lastModified);
+                studies.put(study, new SharedGroups(groups, validators, loadedAt, null));
+            }
+            return studies;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("malformed file", e);
+        }
+    }
+
+    // Maps the file read-only, or reads it whole where mapping is not supported
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large");
+            }
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.debug("Unable to map snapshot " + file + ", reading it: " + e);
+            }
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(file));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NONE);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NONE) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,250 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Executes idempotent GETs against Simva. When the first request has not answered by the
+ * observed latency percentile, a second identical request is sent and the first answer wins;
+ * transient failures are retried with jittered exponential backoff. Hedges and retries both
+ * draw from one {@link RetryBudget}, so they can never more than double the load on Simva.
+ * An attempt and its hedge go through the downstream guard together, as a single call.
+ */
+public class HedgedGetExecutor {
+    private static final Logger logger = Logger.getLogger(HedgedGetExecutor.class);
+    private static final int LATENCY_WINDOW = 256;
+
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+        T read(Response response) throws IOException;
+    }
+
+    private final OkHttpClient client;
+    private final DownstreamGuard guard;
+    private final RetryBudget budget;
+    private final LatencyTracker latencies;
+    private final boolean hedging;
+    private final long minDelayNanos;
+    private final long initialDelayNanos;
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public HedgedGetExecutor(OkHttpClient client, DownstreamGuard guard, SimvaApiConfig config) {
+        this.client = client;
+        this.guard = guard;
+        this.budget = new RetryBudget(config.getGetRetryBudget(), config.getGetRetryBudgetReserve());
+        this.hedging = config.getGetHedgePercentile() > 0;
+        this.latencies = new LatencyTracker(LATENCY_WINDOW, (int) Math.max(1, config.getGetHedgePercentile()));
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getGetHedgeMinDelay()));
+        this.initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getGetHedgeInitialDelay()));
+        this.maxRetries = (int) Math.max(0, config.getGetMaxRetries());
+        this.baseDelayMillis = Math.max(1, config.getGetRetryBaseDelay());
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, config.getGetRetryMaxDelay());
+    }
+
+    public <T> T execute(Request request, ResponseReader<T> reader) throws IOException {
+        requests.increment();
+        budget.deposit();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return guard.call(() -> {
+                    try (Response response = hedged(request)) {
+                        return reader.read(response);
+                    }
+                });
+            } catch (IOException e) {
+                if (attempt >= maxRetries || !isTransient(e)) {
+                    throw e;
+                }
+                if (!budget.tryWithdraw()) {
+                    budgetExhausted.increment();
+                    throw e;
+                }
+                retries.increment();
+                long backoff = backoffMillis(attempt);
+                logger.debug("Retrying " + request.url().encodedPath() + " in " + backoff + " ms after " + e);
+                sleep(backoff);
+            }
+        }
+    }
+
+    // Full jitter: uniform in [0, min(max, base * 2^attempt)]
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    private static boolean isTransient(IOException e) {
+        if (e instanceof DownstreamUnavailableException || e instanceof JsonProcessingException) {
+            return false;
+        }
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).isServerError();
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    private long hedgeDelayNanos() {
+        long observed = latencies.getPercentileNanos();
+        return Math.max(minDelayNanos, observed < 0 ? initialDelayNanos : observed);
+    }
+
+    private Response hedged(Request request) throws IOException {
+        Attempt attempt = new Attempt();
+        attempt.launch(request, false);
+        try {
+            if (hedging) {
+                try {
+                    return attempt.result.get(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (budget.tryWithdraw()) {
+                        hedges.increment();
+                        attempt.launch(request, true);
+                    } else {
+                        budgetExhausted.increment();
+                    }
+                }
+            }
+            return attempt.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            attempt.cancel();
+            throw new InterruptedIOException("Interrupted waiting for " + request.url().encodedPath());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * One logical request: the primary call and, possibly, its hedge. The first response
+     * completes the result and cancels the other call; later responses are closed.
+     */
+    private final class Attempt {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile Call primary;
+        volatile Call hedge;
+
+        void launch(Request request, boolean isHedge) {
+            if (result.isDone()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            Call call = client.newCall(request);
+            if (isHedge) {
+                hedge = call;
+            } else {
+                primary = call;
+            }
+            long start = System.nanoTime();
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    if (response.code() < 500) {
+                        latencies.record(System.nanoTime() - start);
+                    }
+                    if (result.complete(response)) {
+                        if (isHedge) {
+                            hedgeWins.increment();
+                        }
+                        cancelOther(call);
+                    } else {
+                        response.close();
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    // Fail only once no other call can still answer
+                    if (outstanding.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+
+        void cancelOther(Call winner) {
+            Call other = winner == primary ? hedge : primary;
+            if (other != null) {
+                other.cancel();
+            }
+        }
+
+        void cancel() {
+            result.cancel(false);
+            if (primary != null) {
+                primary.cancel();
+            }
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+    }
+
+    public long getHedgeDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos());
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    public String stats() {
+        return "requests=" + getRequestCount() + ", hedges=" + getHedgeCount() + ", hedgeWins=" + getHedgeWinCount()
+            + ", retries=" + getRetryCount() + ", budgetExhausted=" + getBudgetExhaustedCount()
+            + ", hedgeDelayMs=" + getHedgeDelayMillis() + ", budget=" + budget.getAvailable();
+    }
+}
@@ -0,0 +1,25 @@
+package es.eucm.utils;
+
+import java.io.IOException;
+
+/**
+ * Non-successful HTTP answer from a downstream service.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int code;
+
+    public HttpStatusException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    // 5xx answers mean the downstream is unhealthy; 4xx answers are about the request itself
+    public boolean isServerError() {
+        return code >= 500;
+    }
+}
@@ -9,16 +9,62 @@ public class KeycloakConfig {
     private static final String KEYCLOAK_TOKEN_URL = "KEYCLOAK_TOKEN_URL";
     private static final String CLIENT_ID = "KEYCLOAK_CLIENT_CLIENT_ID";
     private static final String CLIENT_SECRET = "KEYCLOAK_CLIENT_CLIENT_SECRET";
+    private static final String CREDENTIAL_VALIDATION = "KEYCLOAK_CREDENTIAL_VALIDATION";
+    private static final String CREDENTIAL_FANOUT = "KEYCLOAK_CREDENTIAL_FANOUT";
+    private static final String CREDENTIAL_FANOUT_MAX_IN_FLIGHT = "KEYCLOAK_CREDENTIAL_FANOUT_MAX_IN_FLIGHT";
+    private static final String CREDENTIAL_FANOUT_TIMEOUT = "KEYCLOAK_CREDENTIAL_FANOUT_TIMEOUT";
+    private static final String LOGOUT_ASYNC = "KEYCLOAK_LOGOUT_ASYNC";
+    private static final String LOGOUT_QUEUE_CAPACITY = "KEYCLOAK_LOGOUT_QUEUE_CAPACITY";
+    private static final String LOGOUT_BATCH_SIZE = "KEYCLOAK_LOGOUT_BATCH_SIZE";
+    private static final String LOGOUT_MAX_RETRIES = "KEYCLOAK_LOGOUT_MAX_RETRIES";
+    private static final String LOGOUT_RETRY_BACKOFF = "KEYCLOAK_LOGOUT_RETRY_BACKOFF";
+    private static final String TOKEN_DEDUP = "KEYCLOAK_TOKEN_DEDUP";
+    private static final String TOKEN_DEDUP_STRIPES = "KEYCLOAK_TOKEN_DEDUP_STRIPES";
+    private static final String TOKEN_CREDENTIAL_KEY = "KEYCLOAK_TOKEN_CREDENTIAL_KEY";
+
+    // Credential validation modes
+    public static final String VALIDATION_LOCAL = "local";
+    public static final String VALIDATION_REMOTE = "remote";
 
     private String keycloakTokenUrl;
     private String clientId;
     private String clientSecret;
+    private String credentialValidation;
+    private long credentialFanout;
+    private long credentialFanoutMaxInFlight;
+    private long credentialFanoutTimeout;
+    private boolean logoutAsync;
+    private long logoutQueueCapacity;
+    private long logoutBatchSize;
+    private long logoutMaxRetries;
+    private long logoutRetryBackoff;
+    private boolean tokenDedup;
+    private long tokenDedupStripes;
+    private String tokenCredentialKey;
 
     // Initialize the config from environment variables
     public KeycloakConfig() {
         this.keycloakTokenUrl = System.getenv(KEYCLOAK_TOKEN_URL);
         this.clientId = System.getenv(CLIENT_ID);
         this.clientSecret = System.getenv(CLIENT_SECRET);
+        this.credentialValidation = System.getenv(CREDENTIAL_VALIDATION);
+        if (this.credentialValidation == null || this.credentialValidation.isEmpty()) {
+            this.credentialValidation = VALIDATION_REMOTE;
+        }
+        this.credentialFanout = EnvConfig.getLong(CREDENTIAL_FANOUT, 4);
+        this.credentialFanoutMaxInFlight = EnvConfig.getLong(CREDENTIAL_FANOUT_MAX_IN_FLIGHT, 64);
+        this.credentialFanoutTimeout = EnvConfig.getLong(CREDENTIAL_FANOUT_TIMEOUT, 10000);
+        this.logoutAsync = !"false".equalsIgnoreCase(System.getenv(LOGOUT_ASYNC));
+        this.logoutQueueCapacity = EnvConfig.getLong(LOGOUT_QUEUE_CAPACITY, 10000);
+        this.logoutBatchSize = EnvConfig.getLong(LOGOUT_BATCH_SIZE, 50);
+        this.logoutMaxRetries = EnvConfig.getLong(LOGOUT_MAX_RETRIES, 3);
+        this.logoutRetryBackoff = EnvConfig.getLong(LOGOUT_RETRY_BACKOFF, 1000);
+        this.tokenDedup = !"false".equalsIgnoreCase(System.getenv(TOKEN_DEDUP));
+        this.tokenDedupStripes = EnvConfig.getLong(TOKEN_DEDUP_STRIPES, 64);
+        this.tokenCredentialKey = System.getenv(TOKEN_CREDENTIAL_KEY);
+        if (this.tokenCredentialKey != null && this.tokenCredentialKey.isEmpty()) {
+            this.tokenCredentialKey = null;
+        }
     }
 
     // Getters for each environment variable
@@ -34,11 +80,87 @@ public class KeycloakConfig {
         return this.clientSecret;
     }
 
+    public String getCredentialValidation() {
+        return this.credentialValidation;
+    }
+
+    // Credentials are checked inside the current KeycloakSession only when "local" is requested
+    public boolean isLocalCredentialValidation() {
+        return VALIDATION_LOCAL.equalsIgnoreCase(this.credentialValidation);
+    }
+
+    // Concurrent group candidates checked per login (1 keeps the sequential loop)
+    public long getCredentialFanout() {
+        return this.credentialFanout;
+    }
+
+    // Concurrent group candidate checks allowed across all logins of the node
+    public long getCredentialFanoutMaxInFlight() {
+        return this.credentialFanoutMaxInFlight;
+    }
+
+    // Milliseconds a login waits for its group candidates before giving up
+    public long getCredentialFanoutTimeout() {
+        return this.credentialFanoutTimeout;
+    }
+
+    // Whether sessions created by remote checks are logged out in the background
+    public boolean isLogoutAsync() {
+        return this.logoutAsync;
+    }
+
+    // Pending logouts kept before new ones are dropped
+    public long getLogoutQueueCapacity() {
+        return this.logoutQueueCapacity;
+    }
+
+    // Logouts sent together in one drain cycle
+    public long getLogoutBatchSize() {
+        return this.logoutBatchSize;
+    }
+
+    // Attempts after the first one for a failed logout
+    public long getLogoutMaxRetries() {
+        return this.logoutMaxRetries;
+    }
+
+    // Milliseconds before the first retry of a failed logout, doubled on every attempt and jittered
+    public long getLogoutRetryBackoff() {
+        return this.logoutRetryBackoff;
+    }
+
+    // Whether concurrent validations of the same study and token share one result
+    public boolean isTokenDedup() {
+        return this.tokenDedup;
+    }
+
+    // Independently locked stripes of the in-flight validations map
+    public long getTokenDedupStripes() {
+        return this.tokenDedupStripes;
+    }
+
+    // Key of the participant token hashes; when unset tokens are only checked as passwords
+    public String getTokenCredentialKey() {
+        return this.tokenCredentialKey;
+    }
+
     // Utility method to print all variables (optional)
     public void printConfig() {
         logger.info("Config values:");
         logger.info(KEYCLOAK_TOKEN_URL + ": " + (this.keycloakTokenUrl != null ? this.keycloakTokenUrl : "not set"));
         logger.info(CLIENT_ID + ": " + (this.clientId != null ? this.clientId : "not set"));
-        logger.info(CLIENT_SECRET + ": " + (this.clientSecret != null ? this.clientSecret : "not set"));
+        logger.info(CLIENT_SECRET + ": " + (this.clientSecret != null ? "set" : "not set"));
+        logger.info(CREDENTIAL_VALIDATION + ": " + this.credentialValidation);
+        logger.info(CREDENTIAL_FANOUT + ": " + this.credentialFanout);
+        logger.info(CREDENTIAL_FANOUT_MAX_IN_FLIGHT + ": " + this.credentialFanoutMaxInFlight);
+        logger.info(CREDENTIAL_FANOUT_TIMEOUT + ": " + this.credentialFanoutTimeout);
+        logger.info(LOGOUT_ASYNC + ": " + this.logoutAsync);
+        logger.info(LOGOUT_QUEUE_CAPACITY + ": " + this.logoutQueueCapacity);
+        logger.info(LOGOUT_BATCH_SIZE + ": " + this.logoutBatchSize);
+        logger.info(LOGOUT_MAX_RETRIES + ": " + this.logoutMaxRetries);
+        logger.info(LOGOUT_RETRY_BACKOFF + ": " + this.logoutRetryBackoff);
+        logger.info(TOKEN_DEDUP + ": " + this.tokenDedup);
+        logger.info(TOKEN_DEDUP_STRIPES + ": " + this.tokenDedupStripes);
+        logger.info(TOKEN_CREDENTIAL_KEY + ": " + (this.tokenCredentialKey != null ? "set" : "not set"));
     }
 }
\ No newline at end of file
@@ -6,25 +6,89 @@ import org.jboss.logging.Logger;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Stateless client for the realm token endpoint. Each validation returns an immutable
+ * {@link Grant} carrying the tokens it obtained, so one instance can serve any number of
+ * concurrent logins and every logout targets exactly the session its own grant created.
+ */
 public class KeycloakOAuth2Client {
     private static final Logger logger = Logger.getLogger(KeycloakOAuth2Client.class);
+    private static final ObjectReader jsonReader = new ObjectMapper().reader();
 
-    private static final OkHttpClient sharedHttpClient = new OkHttpClient(); // Singleton instance
-    private static final KeycloakConfig apiConfig = new KeycloakConfig();
-    private final ObjectMapper objectMapper;
-    private String accessToken;
-    private String refreshToken;
+    /**
+     * Outcome of a password grant.
+     */
+    public static final class Grant {
+        public static final Grant INVALID = new Grant(false, null, null);
+
+        private final boolean valid;
+        private final String accessToken;
+        private final String refreshToken;
+
+        public Grant(boolean valid, String accessToken, String refreshToken) {
+            this.valid = valid;
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public String getAccessToken() {
+            return accessToken;
+        }
+
+        public String getRefreshToken() {
+            return refreshToken;
+        }
+
+        // Whether a user session was created that should be logged out
+        public boolean hasSession() {
+            return refreshToken != null;
+        }
+    }
+
+    private final KeycloakConfig apiConfig;
+    private final OutboundHttpClient httpClient;
+    private final DownstreamGuard guard;
+
+    public KeycloakOAuth2Client(OutboundHttpClient httpClient, KeycloakConfig apiConfig, DownstreamGuardConfig guardConfig) {
+        this.httpClient = httpClient;
+        this.apiConfig = apiConfig;
+        this.guard = new DownstreamGuard("keycloak-token", guardConfig);
+    }
+
+    public KeycloakOAuth2Client(OutboundHttpClient httpClient, KeycloakConfig apiConfig) {
+        this(httpClient, apiConfig, new DownstreamGuardConfig("KEYCLOAK_TOKEN"));
+    }
+
+    public KeycloakOAuth2Client(OutboundHttpClient httpClient) {
+        this(httpClient, new KeycloakConfig());
+    }
 
     public KeycloakOAuth2Client() {
-        this.objectMapper = new ObjectMapper();
+        this(OutboundHttpClient.shared());
+    }
+
+    // Circuit breaker and bulkhead shared by the synchronous calls to the token endpoint
+    public DownstreamGuard getGuard() {
+        return this.guard;
     }
 
-    public boolean validateUserCredentials(String username, String password) throws IOException {
-        logger.info("validateUserCredentials : " + username);
+    /**
+     * Runs a password grant. Rejected credentials give {@link Grant#INVALID}; server errors and
+     * an open breaker are raised as IOException.
+     */
+    public Grant validateUserCredentials(String username, String password) throws IOException {
         RequestBody formBody = new FormBody.Builder()
                 .add("grant_type", "password")
                 .add("client_id", apiConfig.getClientId())
@@ -38,53 +102,114 @@ public class KeycloakOAuth2Client {
                 .post(formBody)
                 .build();
 
-        try (Response response = sharedHttpClient.newCall(request).execute()) { // Use shared instance
-            if (response.isSuccessful()) {
-                String responseBody = response.body().string();
-                JsonNode jsonNode = objectMapper.readTree(responseBody);
-                this.accessToken = jsonNode.get("access_token").asText();
-                this.refreshToken = jsonNode.get("refresh_token").asText();
-                logger.info("Access Token: Bearer " + this.accessToken);
-                return true;
-            } else {
-                logger.info("Error: " + response.code() + " - " + response.body().string());
-                return false;
+        return this.guard.call(() -> {
+            try (Response response = this.httpClient.client().newCall(request).execute()) { // Use node-wide pooled client
+                if (response.isSuccessful()) {
+                    JsonNode jsonNode = jsonReader.readTree(response.body().byteStream());
+                    JsonNode accessToken = jsonNode.get("access_token");
+                    JsonNode refreshToken = jsonNode.get("refresh_token");
+                    logger.debug("Access token issued");
+                    return new Grant(true,
+                        accessToken != null ? accessToken.asText() : null,
+                        refreshToken != null ? refreshToken.asText() : null);
+                } else if (response.code() >= 500) {
+                    throw new HttpStatusException(response.code(), "Token endpoint failed: " + response.code());
+                } else {
+                    // Rejected credentials are the common case of a token login: no body read unless traced
+                    if (logger.isDebugEnabled()) {
+                        logger.debugf("Password grant rejected: %d - %s", response.code(), response.body().string());
+                    }
+                    return Grant.INVALID;
+                }
             }
+        });
+    }
+
+    /**
+     * Opens pooled connections to the token endpoint host ahead of the first logins, by fetching
+     * the realm's OpenID configuration with the given number of concurrent calls. Any HTTP
+     * answer will do: only the connections matter.
+     */
+    public void primeConnections(int connections) throws IOException {
+        String tokenUrl = apiConfig.getKeycloakTokenUrl();
+        if (tokenUrl == null || connections <= 0) {
+            return;
+        }
+        Request request = new Request.Builder()
+            .url(tokenUrl.replace("/protocol/openid-connect/token", "/.well-known/openid-configuration"))
+            .get()
+            .build();
+        CountDownLatch done = new CountDownLatch(connections);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        for (int i = 0; i < connections; i++) {
+            this.httpClient.client().newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    failure.compareAndSet(null, e);
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            if (!done.await(this.httpClient.client().callTimeoutMillis() + 1000L, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Token endpoint connections not primed in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while priming token endpoint connections", e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
         }
     }
 
-    public boolean disconnect() throws IOException {
+    /**
+     * Builds the logout call for the user session created by a grant, without executing it.
+     * @return the call, or null if the grant created no session
+     */
+    public Call logoutCall(Grant grant) {
+        if (!grant.hasSession()) {
+            return null;
+        }
+        RequestBody formBody = new FormBody.Builder()
+            .add("grant_type", "refresh_token")
+            .add("client_id", apiConfig.getClientId())
+            .add("client_secret", apiConfig.getClientSecret())
+            .add("refresh_token", grant.getRefreshToken())
+            .build();
 
-        if (this.accessToken != null) {
-            RequestBody formBody = new FormBody.Builder()
-                .add("grant_type", "refresh_token")
-                .add("client_id", apiConfig.getClientId())
-                .add("client_secret", apiConfig.getClientSecret())
-                .add("refresh_token", this.refreshToken)
-                .build();
+        Request request = new Request.Builder()
+            .url(apiConfig.getKeycloakTokenUrl().replace("/token", "/logout"))
+            .post(formBody)
+            .build();
+        return this.httpClient.client().newCall(request);
+    }
 
-            Request request = new Request.Builder()
-                .url(apiConfig.getKeycloakTokenUrl().replace("/token", "/logout"))
-                //.header("Authorization", "Bearer " + this.accessToken)  // Add authorization header
-                .post(formBody)
-                .build();
-            
-            try (Response response = sharedHttpClient.newCall(request).execute()) { // Use shared instance
+    /**
+     * Logs out the user session created by a grant.
+     * @return true if the session was ended or there was none
+     */
+    public boolean disconnect(Grant grant) throws IOException {
+        Call call = logoutCall(grant);
+        if (call == null) {
+            return true;
+        }
+        return this.guard.call(() -> {
+            try (Response response = call.execute()) { // Use node-wide pooled client
                 if (response.isSuccessful()) {
-                    logger.info("Disconnecting and invalidating access token.");
-                    this.accessToken = null;
-                    this.refreshToken = null;
-                    sharedHttpClient.connectionPool().evictAll();
-                    sharedHttpClient.dispatcher().executorService().shutdown();
-                    logger.info("OkHttpClient resources cleaned up.");
+                    logger.debug("Disconnected session of validated grant.");
                     return true;
                 } else {
-                    logger.info("Error: " + response.code() + " - " + response.body().string());
+                    logger.infof("Logout failed: %d - %s", response.code(), response.body().string());
                     return false;
                 }
             }
-        } else {
-            return true;
-        }  
-    } 
+        });
+    }
 }
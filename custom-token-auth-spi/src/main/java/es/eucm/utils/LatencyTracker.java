@@ -0,0 +1,53 @@
+package es.eucm.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latencies of the most recent calls in a ring buffer and estimates a percentile
+ * over them. Recording is lock-free; the percentile is recomputed every {@code window / 8}
+ * samples and read from a volatile field in between.
+ */
+public class LatencyTracker {
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final int percentile;
+    private final int recomputeEvery;
+    private volatile long cachedNanos = -1;
+
+    public LatencyTracker(int window, int percentile) {
+        this.samples = new AtomicLongArray(Math.max(8, window));
+        this.percentile = Math.max(1, Math.min(100, percentile));
+        this.recomputeEvery = Math.max(1, this.samples.length() / 8);
+    }
+
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % samples.length()), nanos);
+        if ((n + 1) % recomputeEvery == 0) {
+            cachedNanos = compute(Math.min(n + 1, samples.length()));
+        }
+    }
+
+    /**
+     * @return the percentile in nanoseconds, or -1 until a full window has been recorded
+     */
+    public long getPercentileNanos() {
+        return count.get() < samples.length() ? -1 : cachedNanos;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    private long compute(long size) {
+        long[] copy = new long[(int) size];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        int rank = (int) Math.ceil(percentile / 100.0 * copy.length) - 1;
+        return copy[Math.max(0, rank)];
+    }
+}
@@ -0,0 +1,154 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import org.keycloak.credential.CredentialModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.services.managers.BruteForceProtector;
+
+public class LocalCredentialVerifier {
+    private static final Logger logger = Logger.getLogger(LocalCredentialVerifier.class);
+
+    private final ParticipantTokenHasher tokenHasher;
+
+    public LocalCredentialVerifier() {
+        this(null);
+    }
+
+    /**
+     * @param tokenHasher hasher of participant token credentials, or null to check tokens as passwords only
+     */
+    public LocalCredentialVerifier(ParticipantTokenHasher tokenHasher) {
+        this.tokenHasher = tokenHasher;
+    }
+
+    /**
+     * Checks a username/password pair against the realm's credential manager, inside the current session.
+     * No token is issued and no user session is created, so nothing needs to be logged out afterwards.
+     * Users locked by the brute force protector are rejected; wrong passwords are reported to it,
+     * and right ones reset the user's failure count.
+     * @param session current Keycloak session
+     * @param realm realm the user belongs to
+     * @param username username to check
+     * @param password password (or participant token) to check
+     * @return true if the user exists, is enabled, is not locked and the password is valid
+     */
+    public boolean validateUserCredentials(KeycloakSession session, RealmModel realm, String username, String password) {
+        return validate(session, realm, username, password, false, true);
+    }
+
+    /**
+     * Checks a participant token like {@link #validateUserCredentials}, against the fast-hash
+     * participant token credential of the user when it has a current one, made from the user's
+     * current password credential; that credential alone decides, so a wrong token costs no
+     * password hashing either. Otherwise the token is checked as the password, and on success
+     * the user is given a participant token credential, so the next logins skip the realm's
+     * password hashing. The password is left in place, and resetting it revokes the credential.
+     */
+    public boolean validateParticipantToken(KeycloakSession session, RealmModel realm, String username, String token) {
+        return validate(session, realm, username, token, this.tokenHasher != null, true);
+    }
+
+    /**
+     * Checks a participant token like {@link #validateParticipantToken}, on behalf of an
+     * administrator rather than of the user: the brute force protector is told neither of wrong
+     * tokens nor of right ones, so a batch of checks cannot lock anyone out or clear their
+     * failures. Locked users are still rejected, and no participant token credential is created
+     * or replaced.
+     */
+    public boolean checkParticipantToken(KeycloakSession session, RealmModel realm, String username, String token) {
+        return validate(session, realm, username, token, this.tokenHasher != null, false);
+    }
+
+    private boolean validate(KeycloakSession session, RealmModel realm, String username, String password, boolean participantToken, boolean login) {
+        if (username == null || password == null) {
+            return false;
+        }
+        UserModel user = session.users().getUserByUsername(realm, username);
+        if (user == null) {
+            logger.debug("validateUserCredentials : unknown user");
+            return false;
+        }
+        if (!user.isEnabled()) {
+            logger.infof("validateUserCredentials : disabled user %s", user.getId());
+            return false;
+        }
+
+        if (isLockedOut(session, realm, user)) {
+            logger.infof("validateUserCredentials : user %s locked by brute force protection", user.getId());
+            return false;
+        }
+        BruteForceProtector protector = realm.isBruteForceProtected() ? session.getProvider(BruteForceProtector.class) : null;
+
+        CredentialModel stored = null;
+        if (participantToken) {
+            stored = user.credentialManager().getStoredCredentialsByTypeStream(ParticipantTokenHasher.TYPE)
+                .findFirst().orElse(null);
+            CredentialModel currentPassword = ParticipantTokenHasher.currentPassword(user);
+            if (stored != null && this.tokenHasher.isCurrent(stored, currentPassword)) {
+                // A current credential is authoritative: wrong tokens never reach the password hashing
+                boolean valid = this.tokenHasher.matches(stored, password, currentPassword);
+                report(session, realm, user, protector, login, valid);
+                logger.debugf("validateUserCredentials : %s -> %s (participant token)", user.getId(), valid);
+                return valid;
+            }
+        }
+
+        boolean valid = user.credentialManager().isValid(UserCredentialModel.password(password));
+        report(session, realm, user, protector, login, valid);
+        // Checks for an administrator stay read-only
+        if (valid && participantToken && login) {
+            migrate(user, stored, password);
+        }
+        logger.debugf("validateUserCredentials : %s -> %s", user.getId(), valid);
+        return valid;
+    }
+
+    /**
+     * Whether the brute force protector of the realm has locked the user out, permanently or for now.
+     * Every way of logging a participant in must honour it, including those that check no password.
+     */
+    public static boolean isLockedOut(KeycloakSession session, RealmModel realm, UserModel user) {
+        if (!realm.isBruteForceProtected()) {
+            return false;
+        }
+        BruteForceProtector protector = session.getProvider(BruteForceProtector.class);
+        return protector.isPermanentlyLockedOut(session, realm, user)
+            || protector.isTemporarilyDisabled(session, realm, user);
+    }
+
+    // Tells the brute force protector of a login attempt, as Keycloak's own login forms do:
+    // a success resets the user's failure count
+    private static void report(KeycloakSession session, RealmModel realm, UserModel user, BruteForceProtector protector, boolean login, boolean valid) {
+        if (!login || protector == null) {
+            return;
+        }
+        if (valid) {
+            protector.successfulLogin(realm, user, session.getContext().getConnection());
+        } else {
+            protector.failedLogin(realm, user, session.getContext().getConnection());
+        }
+    }
+
+    // Replaces a missing or stale participant token credential after a successful password check
+    private void migrate(UserModel user, CredentialModel stale, String token) {
+        try {
+            if (stale != null) {
+                user.credentialManager().removeStoredCredentialById(stale.getId());
+            }
+            // Read after the check: a rehash on login may have updated the password credential
+            CredentialModel password = ParticipantTokenHasher.currentPassword(user);
+            if (password == null) {
+                return;
+            }
+            user.credentialManager().createStoredCredential(this.tokenHasher.createCredential(token, password));
+            logger.debugf("validateUserCredentials : participant token credential stored for %s", user.getId());
+        } catch (RuntimeException e) {
+            // The login itself succeeded; the next one tries again
+            logger.infof("validateUserCredentials : unable to store participant token credential for %s: %s", user.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package es.eucm.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * Bounded background queue that logs out the sessions created by remote credential checks.
+ * Authentication threads only offer to the queue and never wait: when it is full the logout is
+ * dropped and the session is left to expire on its own. A single worker drains the queue in
+ * batches and sends each batch concurrently through the pooled client. A failed logout is
+ * re-queued after an exponential, jittered backoff (KEYCLOAK_LOGOUT_RETRY_BACKOFF, doubled on
+ * every attempt), so an outage of the endpoint does not burn the retries in milliseconds, until
+ * it runs out of retries and is abandoned. Queue depth, logouts waiting for a retry and the
+ * logouts enqueued, completed, retried, abandoned and dropped are published to the registry.
+ */
+public class LogoutQueue {
+    private static final Logger logger = Logger.getLogger(LogoutQueue.class);
+    private static final long BATCH_TIMEOUT_SECONDS = 30;
+    public static final String DEPTH_GAUGE = "simva.logout.queue.depth";
+    public static final String RETRYING_GAUGE = "simva.logout.queue.retrying";
+    public static final String LOGOUTS_COUNTER = "simva.logout.queue.logouts";
+
+    private static final class Pending {
+        final KeycloakOAuth2Client.Grant grant;
+        final int attempt;
+
+        Pending(KeycloakOAuth2Client.Grant grant, int attempt) {
+            this.grant = grant;
+            this.attempt = attempt;
+        }
+    }
+
+    private final KeycloakOAuth2Client keycloakClient;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final Thread worker;
+    private final ScheduledExecutorService retryScheduler;
+    private final MeterRegistry registry;
+    private final List<Meter> meters = new ArrayList<>();
+    private volatile boolean running = true;
+    // Logouts waiting for their retry delay
+    private final AtomicInteger retrying = new AtomicInteger();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public LogoutQueue(KeycloakOAuth2Client keycloakClient, int capacity, int batchSize, int maxRetries,
+                       long retryBackoffMillis, MeterRegistry registry) {
+        this.keycloakClient = keycloakClient;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+        this.registry = registry;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "keycloak-logout-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        meters.add(Gauge.builder(DEPTH_GAUGE, queue, BlockingQueue::size)
+            .description("Logouts waiting in the queue")
+            .register(registry));
+        meters.add(Gauge.builder(RETRYING_GAUGE, retrying, AtomicInteger::get)
+            .description("Failed logouts waiting for their retry")
+            .register(registry));
+        counter("enqueued", enqueued);
+        counter("completed", completed);
+        counter("retried", retried);
+        counter("abandoned", failed);
+        counter("dropped", dropped);
+        this.worker = new Thread(this::drain, "keycloak-logout-queue");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public LogoutQueue(KeycloakOAuth2Client keycloakClient, KeycloakConfig config, MeterRegistry registry) {
+        this(keycloakClient, (int) config.getLogoutQueueCapacity(), (int) config.getLogoutBatchSize(),
+            (int) config.getLogoutMaxRetries(), config.getLogoutRetryBackoff(), registry);
+    }
+
+    private void counter(String outcome, LongAdder count) {
+        meters.add(FunctionCounter.builder(LOGOUTS_COUNTER, count, LongAdder::sum)
+            .description("Logouts of validation sessions by outcome")
+            .tags("outcome", outcome)
+            .register(registry));
+    }
+
+    /**
+     * Schedules the logout of the session created by a grant. Never blocks.
+     * @return false if the queue was full and the logout was dropped
+     */
+    public boolean submit(KeycloakOAuth2Client.Grant grant) {
+        if (!grant.hasSession()) {
+            return true;
+        }
+        if (running && queue.offer(new Pending(grant, 0))) {
+            enqueued.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.warn("Logout batch failed: " + e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(batch.size());
+        for (Pending pending : batch) {
+            Call call = keycloakClient.logoutCall(pending.grant);
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        if (response.isSuccessful()) {
+                            completed.increment();
+                        } else {
+                            retry(pending, "HTTP " + response.code());
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    try {
+                        retry(pending, e.toString());
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        if (!done.await(BATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.info("Logout batch still running after " + BATCH_TIMEOUT_SECONDS + " s");
+        }
+    }
+
+    // Re-queues a failed logout after its backoff, or abandons it
+    private void retry(Pending pending, String reason) {
+        if (pending.attempt >= maxRetries || !running) {
+            abandon(pending, reason);
+            return;
+        }
+        Pending next = new Pending(pending.grant, pending.attempt + 1);
+        retrying.incrementAndGet();
+        try {
+            retryScheduler.schedule(() -> {
+                retrying.decrementAndGet();
+                if (running && queue.offer(next)) {
+                    retried.increment();
+                } else {
+                    abandon(next, reason + ", then the queue was full or closed");
+                }
+            }, backoff(pending.attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            retrying.decrementAndGet();
+            abandon(pending, reason);
+        }
+    }
+
+    // Full jitter: uniform in [0, backoff * 2^attempt), so the retries of a failed batch spread out
+    private long backoff(int attempt) {
+        long ceiling = retryBackoffMillis << Math.min(attempt, 16);
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling) : 0;
+    }
+
+    private void abandon(Pending pending, String reason) {
+        failed.increment();
+        logger.info("Logout abandoned after " + (pending.attempt + 1) + " attempts: " + reason);
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public int getRetrying() {
+        return retrying.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public String stats() {
+        return "depth=" + getDepth() + ", retrying=" + getRetrying() + ", enqueued=" + getEnqueuedCount() + ", completed=" + getCompletedCount()
+            + ", retried=" + getRetriedCount() + ", abandoned=" + getFailedCount() + ", dropped=" + getDroppedCount();
+    }
+
+    public void close() {
+        running = false;
+        worker.interrupt();
+        retryScheduler.shutdownNow();
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+        if (!queue.isEmpty()) {
+            logger.info("Logout queue closed with pending sessions: " + stats());
+        }
+    }
+}
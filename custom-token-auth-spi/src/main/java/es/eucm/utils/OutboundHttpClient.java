@@ -0,0 +1,156 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Node-wide pooled HTTP client used for every outbound call (Simva API and token endpoint).
+ * The instance is owned by CustomAuthenticatorFactory, which acquires it in postInit and
+ * releases it in close; the last release shuts the pool and dispatcher down.
+ */
+public class OutboundHttpClient {
+    private static final Logger logger = Logger.getLogger(OutboundHttpClient.class);
+
+    private static final Object lock = new Object();
+    private static volatile OutboundHttpClient shared;
+    private static int owners;
+
+    private final OkHttpClient client;
+    private final LongAdder callsStarted = new LongAdder();
+    private final LongAdder callsFailed = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+
+    public OutboundHttpClient(OutboundHttpConfig config) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests((int) Math.max(1, config.getMaxRequests()));
+        dispatcher.setMaxRequestsPerHost((int) Math.max(1, config.getMaxRequestsPerHost()));
+        this.client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool((int) Math.max(0, config.getMaxIdleConnections()), config.getKeepAlive(), TimeUnit.SECONDS))
+            .dispatcher(dispatcher)
+            .protocols(config.isHttp2()
+                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : Collections.singletonList(Protocol.HTTP_1_1))
+            .connectTimeout(config.getConnectTimeout(), TimeUnit.MILLISECONDS)
+            .readTimeout(config.getReadTimeout(), TimeUnit.MILLISECONDS)
+            .writeTimeout(config.getWriteTimeout(), TimeUnit.MILLISECONDS)
+            .callTimeout(config.getCallTimeout(), TimeUnit.MILLISECONDS)
+            .eventListener(new EventListener() {
+                @Override
+                public void callStart(Call call) {
+                    callsStarted.increment();
+                }
+
+                @Override
+                public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+                    connectionsOpened.increment();
+                }
+
+                @Override
+                public void connectionAcquired(Call call, Connection connection) {
+                    connectionsAcquired.increment();
+                }
+
+                @Override
+                public void callFailed(Call call, IOException ioe) {
+                    callsFailed.increment();
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Takes a reference on the node-wide client, creating it on first use.
+     */
+    public static OutboundHttpClient acquire() {
+        synchronized (lock) {
+            if (shared == null) {
+                OutboundHttpConfig config = new OutboundHttpConfig();
+                config.printConfig();
+                shared = new OutboundHttpClient(config);
+            }
+            owners++;
+            return shared;
+        }
+    }
+
+    /**
+     * Drops a reference taken with acquire(); the last one closes the client.
+     */
+    public static void release() {
+        synchronized (lock) {
+            owners--;
+            if (owners <= 0 && shared != null) {
+                logger.info("Closing outbound HTTP client: " + shared.stats());
+                shared.close();
+                shared = null;
+                owners = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the node-wide client taken with acquire(); it is never created here, so a caller
+     * outside the provider lifecycle cannot leave an unowned pool behind.
+     */
+    public static OutboundHttpClient shared() {
+        OutboundHttpClient current = shared;
+        if (current == null) {
+            throw new IllegalStateException("Outbound HTTP client not acquired");
+        }
+        return current;
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    public long getCallsStarted() {
+        return callsStarted.sum();
+    }
+
+    public long getCallsFailed() {
+        return callsFailed.sum();
+    }
+
+    public long getConnectionsAcquired() {
+        return connectionsAcquired.sum();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    // Share of acquired connections that came from the pool instead of a new handshake
+    public double getConnectionReuseRatio() {
+        long acquired = getConnectionsAcquired();
+        return acquired == 0 ? 0.0 : 1.0 - Math.min(acquired, getConnectionsOpened()) / (double) acquired;
+    }
+
+    public String stats() {
+        return "calls=" + getCallsStarted() + ", failed=" + getCallsFailed()
+            + ", acquired=" + getConnectionsAcquired() + ", opened=" + getConnectionsOpened()
+            + ", pooled=" + client.connectionPool().connectionCount()
+            + ", idle=" + client.connectionPool().idleConnectionCount();
+    }
+
+    public void close() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+}
@@ -0,0 +1,96 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class OutboundHttpConfig {
+    private static final Logger logger = Logger.getLogger(OutboundHttpConfig.class);
+
+    // Define configuration variables
+    private static final String MAX_IDLE_CONNECTIONS = "OUTBOUND_HTTP_MAX_IDLE_CONNECTIONS";
+    private static final String KEEP_ALIVE = "OUTBOUND_HTTP_KEEP_ALIVE";
+    private static final String HTTP2 = "OUTBOUND_HTTP_HTTP2";
+    private static final String CONNECT_TIMEOUT = "OUTBOUND_HTTP_CONNECT_TIMEOUT";
+    private static final String READ_TIMEOUT = "OUTBOUND_HTTP_READ_TIMEOUT";
+    private static final String WRITE_TIMEOUT = "OUTBOUND_HTTP_WRITE_TIMEOUT";
+    private static final String CALL_TIMEOUT = "OUTBOUND_HTTP_CALL_TIMEOUT";
+    private static final String MAX_REQUESTS = "OUTBOUND_HTTP_MAX_REQUESTS";
+    private static final String MAX_REQUESTS_PER_HOST = "OUTBOUND_HTTP_MAX_REQUESTS_PER_HOST";
+
+    private long maxIdleConnections;
+    private long keepAlive;
+    private boolean http2;
+    private long connectTimeout;
+    private long readTimeout;
+    private long writeTimeout;
+    private long callTimeout;
+    private long maxRequests;
+    private long maxRequestsPerHost;
+
+    // Initialize the config from environment variables
+    public OutboundHttpConfig() {
+        this.maxIdleConnections = EnvConfig.getLong(MAX_IDLE_CONNECTIONS, 32);
+        this.keepAlive = EnvConfig.getLong(KEEP_ALIVE, 300);
+        this.http2 = !"false".equalsIgnoreCase(System.getenv(HTTP2));
+        this.connectTimeout = EnvConfig.getLong(CONNECT_TIMEOUT, 2000);
+        this.readTimeout = EnvConfig.getLong(READ_TIMEOUT, 5000);
+        this.writeTimeout = EnvConfig.getLong(WRITE_TIMEOUT, 5000);
+        this.callTimeout = EnvConfig.getLong(CALL_TIMEOUT, 10000);
+        this.maxRequests = EnvConfig.getLong(MAX_REQUESTS, 128);
+        this.maxRequestsPerHost = EnvConfig.getLong(MAX_REQUESTS_PER_HOST, 64);
+    }
+
+    // Idle keep-alive connections kept in the pool
+    public long getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    // Seconds an idle connection is kept alive
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    // Whether HTTP/2 is negotiated with servers that offer it
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    // Timeouts in milliseconds (0 means no timeout)
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public long getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public long getCallTimeout() {
+        return callTimeout;
+    }
+
+    // Dispatcher limits for asynchronous calls
+    public long getMaxRequests() {
+        return maxRequests;
+    }
+
+    public long getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(MAX_IDLE_CONNECTIONS + ": " + maxIdleConnections);
+        logger.info(KEEP_ALIVE + ": " + keepAlive);
+        logger.info(HTTP2 + ": " + http2);
+        logger.info(CONNECT_TIMEOUT + ": " + connectTimeout);
+        logger.info(READ_TIMEOUT + ": " + readTimeout);
+        logger.info(WRITE_TIMEOUT + ": " + writeTimeout);
+        logger.info(CALL_TIMEOUT + ": " + callTimeout);
+        logger.info(MAX_REQUESTS + ": " + maxRequests);
+        logger.info(MAX_REQUESTS_PER_HOST + ": " + maxRequestsPerHost);
+    }
+}
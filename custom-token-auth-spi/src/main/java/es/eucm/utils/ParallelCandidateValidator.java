@@ -0,0 +1,138 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks a list of candidate usernames concurrently and returns the first one that validates.
+ * Each login runs at most {@code perLogin} checks at a time and the whole node at most
+ * {@code maxInFlight}, so one large study cannot monopolise the outbound capacity.
+ * Outstanding checks are cancelled as soon as a candidate succeeds or the timeout expires.
+ */
+public class ParallelCandidateValidator {
+    private static final Logger logger = Logger.getLogger(ParallelCandidateValidator.class);
+
+    @FunctionalInterface
+    public interface Check {
+        boolean test(String candidate) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int perLogin;
+    private final long timeoutNanos;
+
+    public ParallelCandidateValidator(int perLogin, int maxInFlight, long timeoutMillis) {
+        this.perLogin = Math.max(1, perLogin);
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.executor = createExecutor(Math.max(1, maxInFlight));
+    }
+
+    public ParallelCandidateValidator(KeycloakConfig config) {
+        this((int) config.getCredentialFanout(), (int) config.getCredentialFanoutMaxInFlight(), config.getCredentialFanoutTimeout());
+    }
+
+    // Virtual threads when the runtime has them (Java 21+), a bounded daemon pool otherwise
+    private static ExecutorService createExecutor(int maxThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxThreads, r -> {
+                Thread t = new Thread(r, "simva-candidate-check-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public boolean isParallel() {
+        return this.perLogin > 1;
+    }
+
+    /**
+     * @param candidates usernames to check
+     * @param check validation of a single candidate
+     * @return the first candidate that validated, or null if none did before the timeout
+     * @throws IOException if the calling thread is interrupted while waiting
+     */
+    public String firstValid(List<String> candidates, Check check) throws IOException {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        ExecutorCompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        List<Future<String>> futures = new ArrayList<>(Math.min(candidates.size(), perLogin));
+        int next = 0;
+        int running = 0;
+        try {
+            while (next < candidates.size() && running < perLogin) {
+                futures.add(completion.submit(task(candidates.get(next++), check, deadline)));
+                running++;
+            }
+            while (running > 0) {
+                long remaining = deadline - System.nanoTime();
+                Future<String> done = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    logger.info("Candidate checks timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                    return null;
+                }
+                running--;
+                try {
+                    String valid = done.get();
+                    if (valid != null) {
+                        return valid;
+                    }
+                } catch (ExecutionException e) {
+                    logger.info(e.getCause().toString());
+                }
+                if (next < candidates.size()) {
+                    futures.add(completion.submit(task(candidates.get(next++), check, deadline)));
+                    running++;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking candidates");
+        } finally {
+            for (Future<String> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Callable<String> task(String candidate, Check check, long deadline) {
+        return () -> {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !inFlight.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                return null;
+            }
+            try {
+                return check.test(candidate) ? candidate : null;
+            } finally {
+                inFlight.release();
+            }
+        };
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,251 @@
+package es.eucm.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact participant token to group index of a single study.
+ * Tokens are kept in an open-addressing table (one String reference and one int per slot), and
+ * group ids are interned once per study, so tens of thousands of participants cost well under a
+ * megabyte on top of the token strings. Lookups are optimistic and lock-free; updates are applied
+ * in place under a write lock.
+ */
+public class ParticipantIndex {
+
+    private static final String TOMBSTONE = new String("<removed>");
+    private static final int MIN_CAPACITY = 16;
+
+    private static final class Table {
+        final String[] tokens;
+        final int[] groups;
+
+        Table(int capacity) {
+            this.tokens = new String[capacity];
+            this.groups = new int[capacity];
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final List<String> groupIds = new ArrayList<>();
+    private final Map<String, Integer> groupOrdinals = new HashMap<>();
+    private volatile String[] groupIdSnapshot = new String[0];
+    private volatile Table table;
+    private int size;
+    private int used;
+
+    public ParticipantIndex(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Keep the load factor under 0.5 so probe sequences stay short
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slot(String token, int mask) {
+        int h = token.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the group id a participant token belongs to, or null if the token is unknown.
+     */
+    public String groupOf(String token) {
+        if (token == null) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        String group = find(token);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                group = find(token);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return group;
+    }
+
+    private String find(String token) {
+        Table t = this.table;
+        String[] ids = this.groupIdSnapshot;
+        int mask = t.tokens.length - 1;
+        for (int i = slot(token, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            String current = t.tokens[i];
+            if (current == null) {
+                return null;
+            }
+            if (current != TOMBSTONE && current.equals(token)) {
+                int ordinal = t.groups[i];
+                return ordinal < ids.length ? ids[ordinal] : null;
+            }
+        }
+        return null;
+    }
+
+    public void put(String token, String groupId) {
+        long stamp = lock.writeLock();
+        try {
+            putLocked(token, groupId);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(String token) {
+        long stamp = lock.writeLock();
+        try {
+            removeLocked(token);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Brings the index in line with the given token to group mapping, touching only the
+     * participants that were added, moved or removed.
+     * @return number of changed entries
+     */
+    public int update(Map<String, String> participants) {
+        long stamp = lock.writeLock();
+        try {
+            int changes = 0;
+            Table t = this.table;
+            for (int i = 0; i < t.tokens.length; i++) {
+                String token = t.tokens[i];
+                if (token != null && token != TOMBSTONE && !participants.containsKey(token)) {
+                    t.tokens[i] = TOMBSTONE;
+                    size--;
+                    changes++;
+                }
+            }
+            for (Map.Entry<String, String> e : participants.entrySet()) {
+                if (putLocked(e.getKey(), e.getValue())) {
+                    changes++;
+                }
+            }
+            return changes;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int ordinalOf(String groupId) {
+        Integer ordinal = groupOrdinals.get(groupId);
+        if (ordinal == null) {
+            ordinal = groupIds.size();
+            groupIds.add(groupId);
+            groupOrdinals.put(groupId, ordinal);
+            this.groupIdSnapshot = groupIds.toArray(new String[0]);
+        }
+        return ordinal;
+    }
+
+    private boolean putLocked(String token, String groupId) {
+        int ordinal = ordinalOf(groupId);
+        if ((used + 1) * 2L > table.tokens.length) {
+            rehash(capacityFor(size + 1));
+        }
+        Table t = this.table;
+        int mask = t.tokens.length - 1;
+        int firstFree = -1;
+        for (int i = slot(token, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            String current = t.tokens[i];
+            if (current == null) {
+                if (firstFree < 0) {
+                    firstFree = i;
+                    used++;
+                }
+                break;
+            }
+            if (current == TOMBSTONE) {
+                if (firstFree < 0) {
+                    firstFree = i;
+                }
+            } else if (current.equals(token)) {
+                if (t.groups[i] == ordinal) {
+                    return false;
+                }
+                t.groups[i] = ordinal;
+                return true;
+            }
+        }
+        t.groups[firstFree] = ordinal;
+        t.tokens[firstFree] = token;
+        size++;
+        return true;
+    }
+
+    private boolean removeLocked(String token) {
+        Table t = this.table;
+        int mask = t.tokens.length - 1;
+        for (int i = slot(token, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            String current = t.tokens[i];
+            if (current == null) {
+                return false;
+            }
+            if (current != TOMBSTONE && current.equals(token)) {
+                t.tokens[i] = TOMBSTONE;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rehash(int capacity) {
+        Table old = this.table;
+        Table t = new Table(Math.max(capacity, MIN_CAPACITY));
+        int mask = t.tokens.length - 1;
+        for (int i = 0; i < old.tokens.length; i++) {
+            String token = old.tokens[i];
+            if (token != null && token != TOMBSTONE) {
+                int j = slot(token, mask);
+                while (t.tokens[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                t.tokens[j] = token;
+                t.groups[j] = old.groups[i];
+            }
+        }
+        this.used = this.size;
+        this.table = t;
+    }
+
+    /**
+     * Visits every token to group pair currently in the index.
+     */
+    public void forEach(BiConsumer<String, String> consumer) {
+        long stamp = lock.readLock();
+        try {
+            Table t = this.table;
+            String[] ids = this.groupIdSnapshot;
+            for (int i = 0; i < t.tokens.length; i++) {
+                String token = t.tokens[i];
+                if (token != null && token != TOMBSTONE) {
+                    consumer.accept(token, ids[t.groups[i]]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package es.eucm.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a "participants" array straight into a list of usernames. Simva lists participants
+ * either as plain usernames or as objects with a "username" field; other fields are skipped
+ * without being materialised.
+ */
+public class ParticipantListDeserializer extends JsonDeserializer<List<String>> {
+
+    @Override
+    public List<String> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> participants = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                participants.add(parser.getText());
+            } else if (token == JsonToken.START_OBJECT) {
+                String username = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    if ("username".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                        username = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (username != null) {
+                    participants.add(username);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return participants;
+    }
+}
@@ -0,0 +1,149 @@
+package es.eucm.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.keycloak.common.util.Time;
+import org.keycloak.credential.CredentialModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.credential.PasswordCredentialModel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keyed fast hash of Simva participant tokens. Participant tokens are high-entropy random
+ * strings, so unlike passwords they need no key stretching: an HMAC-SHA-256 under a server-side
+ * key (KEYCLOAK_TOKEN_CREDENTIAL_KEY) is enough and takes microseconds instead of the tens of
+ * milliseconds of the realm's password policy. Stored credentials carry an id of the key they
+ * were made with, so after a key change they no longer match and are made again on the next
+ * password check. They also carry the id and creation time of the password credential the token
+ * was checked against: resetting or removing the password revokes them.
+ */
+public class ParticipantTokenHasher {
+    public static final String TYPE = "simva-participant-token";
+    public static final String ALGORITHM = "HmacSHA256";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final SecretKeySpec key;
+    private final String keyId;
+    private final ThreadLocal<Mac> macs;
+
+    public ParticipantTokenHasher(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        this.key = new SecretKeySpec(bytes, ALGORITHM);
+        this.keyId = keyId(bytes);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    // The hasher of the configured key, or null when participant token credentials are disabled
+    public static ParticipantTokenHasher fromConfig(KeycloakConfig config) {
+        String key = config.getTokenCredentialKey();
+        return key != null ? new ParticipantTokenHasher(key) : null;
+    }
+
+    public String getKeyId() {
+        return this.keyId;
+    }
+
+    // Current password credential of a user, or null
+    public static CredentialModel currentPassword(UserModel user) {
+        return user.credentialManager().getStoredCredentialsByTypeStream(PasswordCredentialModel.TYPE)
+            .findFirst().orElse(null);
+    }
+
+    /**
+     * Builds the stored credential of a participant token.
+     * @param password password credential the token was just checked against
+     */
+    public CredentialModel createCredential(String token, CredentialModel password) {
+        ObjectNode data = mapper.createObjectNode()
+            .put("algorithm", ALGORITHM)
+            .put("keyId", this.keyId)
+            .put("passwordId", password.getId());
+        if (password.getCreatedDate() != null) {
+            data.put("passwordCreated", password.getCreatedDate());
+        }
+        CredentialModel model = new CredentialModel();
+        model.setType(TYPE);
+        model.setCreatedDate(Time.currentTimeMillis());
+        model.setCredentialData(data.toString());
+        model.setSecretData(mapper.createObjectNode().put("value", Base64.getEncoder().encodeToString(hash(token))).toString());
+        return model;
+    }
+
+    /**
+     * Whether the credential was made with the current key, from the given password credential.
+     * @param password current password credential of the user, or null if it has none
+     */
+    public boolean isCurrent(CredentialModel stored, CredentialModel password) {
+        JsonNode data = read(stored.getCredentialData());
+        return data != null && password != null
+            && this.keyId.equals(data.path("keyId").asText(null))
+            && password.getId() != null && password.getId().equals(data.path("passwordId").asText(null))
+            && password.getCreatedDate() != null && data.path("passwordCreated").asLong(-1) == password.getCreatedDate();
+    }
+
+    /**
+     * Checks a token against a stored credential in constant time.
+     * @param password current password credential of the user, or null if it has none
+     * @return false as well when the credential was made with another key or another password
+     */
+    public boolean matches(CredentialModel stored, String token, CredentialModel password) {
+        if (token == null || !isCurrent(stored, password)) {
+            return false;
+        }
+        JsonNode secret = read(stored.getSecretData());
+        String value = secret != null ? secret.path("value").asText(null) : null;
+        if (value == null) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(Base64.getDecoder().decode(value), hash(token));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private byte[] hash(String token) {
+        return macs.get().doFinal(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static JsonNode read(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return mapper.readTree(json);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // First bytes of the SHA-256 of the key: tells keys apart without revealing them
+    private static String keyId(byte[] key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 11);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
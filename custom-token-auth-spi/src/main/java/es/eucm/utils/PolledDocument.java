@@ -0,0 +1,95 @@
+package es.eucm.utils;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A small document polled from a URL or a file, such as a key set or a revocation list. URLs
+ * are revalidated with conditional GETs and files by their modification time, so an unchanged
+ * document costs neither a download nor a parse.
+ */
+public class PolledDocument {
+    private final String name;
+    private final String url;
+    private final Path file;
+    private final OutboundHttpClient httpClient;
+    private CacheValidators validators;
+    private long fileModified = -1;
+
+    /**
+     * @param url URL of the document, or null to read it from the file
+     * @param file path of the document, used when no URL is given
+     */
+    public PolledDocument(String name, String url, String file, OutboundHttpClient httpClient) {
+        this.name = name;
+        this.url = url;
+        this.file = url == null && file != null ? Paths.get(file) : null;
+        this.httpClient = httpClient;
+    }
+
+    public boolean isConfigured() {
+        return this.url != null || this.file != null;
+    }
+
+    /**
+     * Reads the document if it changed since the last successful fetch.
+     * @return the new content, or a not-modified response
+     */
+    public synchronized ConditionalResponse<byte[]> fetch() throws IOException {
+        if (this.url != null) {
+            return fetchUrl();
+        }
+        if (this.file != null) {
+            return fetchFile();
+        }
+        throw new IOException("No source configured for " + this.name);
+    }
+
+    private ConditionalResponse<byte[]> fetchUrl() throws IOException {
+        Request.Builder builder = new Request.Builder().url(this.url).get();
+        if (this.validators != null) {
+            this.validators.apply(builder);
+        }
+        try (Response response = this.httpClient.client().newCall(builder.build()).execute()) {
+            CacheValidators current = CacheValidators.from(response, this.validators);
+            if (response.code() == 304) {
+                this.validators = current;
+                return ConditionalResponse.notModified(current);
+            }
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new HttpStatusException(response.code(), "Unable to fetch " + this.name + ": " + response.code());
+            }
+            byte[] content = body.bytes();
+            this.validators = current;
+            return ConditionalResponse.modified(content, current);
+        }
+    }
+
+    private ConditionalResponse<byte[]> fetchFile() throws IOException {
+        long modified = Files.getLastModifiedTime(this.file).toMillis();
+        if (modified == this.fileModified) {
+            return ConditionalResponse.notModified(null);
+        }
+        byte[] content = Files.readAllBytes(this.file);
+        this.fileModified = modified;
+        return ConditionalResponse.modified(content, null);
+    }
+
+    // Forgets the validators, so the next fetch downloads the document again
+    public synchronized void reset() {
+        this.validators = null;
+        this.fileModified = -1;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + " (" + (this.url != null ? this.url : this.file) + ")";
+    }
+}
@@ -0,0 +1,71 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampled tracing of the request parameters seen by the authenticators, written at DEBUG to the
+ * es.eucm.utils.RequestTrace category. Only the values of allowlisted parameters are logged;
+ * passwords, tokens, usernames and anything else unknown are redacted. While the category is
+ * above DEBUG, {@link #isSampled()} is a level check and the hot path allocates nothing.
+ */
+public final class RequestTrace {
+    private static final Logger logger = Logger.getLogger(RequestTrace.class);
+    private static final String REDACTED = "[redacted]";
+
+    private static final class Holder {
+        static final RequestTrace INSTANCE = new RequestTrace(new RequestTraceConfig());
+    }
+
+    private final long samplePercent;
+    private final Set<String> fields;
+
+    public RequestTrace(RequestTraceConfig config) {
+        this.samplePercent = config.getSamplePercent();
+        this.fields = config.getFields();
+        config.printConfig();
+    }
+
+    /**
+     * Node-wide trace, configured from the environment on first use.
+     */
+    public static RequestTrace getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Level guard and sampling decision of one request: the parameters of the request are
+     * traced only when this returns true.
+     */
+    public boolean isSampled() {
+        if (!logger.isDebugEnabled()) {
+            return false;
+        }
+        return samplePercent >= 100 || (samplePercent > 0 && ThreadLocalRandom.current().nextLong(100) < samplePercent);
+    }
+
+    /**
+     * Logs one parameter map (query or form) of a sampled request.
+     */
+    public void parameters(String source, Map<String, List<String>> parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(64 + 32 * parameters.size());
+        for (Map.Entry<String, List<String>> entry : parameters.entrySet()) {
+            boolean allowed = fields.contains(entry.getKey());
+            for (String value : entry.getValue()) {
+                if (message.length() > 0) {
+                    message.append(", ");
+                }
+                message.append(entry.getKey()).append('=');
+                message.append(allowed || value == null || value.isEmpty() ? value : REDACTED);
+            }
+        }
+        logger.debugf("%s: %s", source, message);
+    }
+}
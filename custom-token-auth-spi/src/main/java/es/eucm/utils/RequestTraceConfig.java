@@ -0,0 +1,51 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class RequestTraceConfig {
+    private static final Logger logger = Logger.getLogger(RequestTraceConfig.class);
+
+    // Define configuration variables
+    private static final String SAMPLE_PERCENT = "REQUEST_TRACE_SAMPLE_PERCENT";
+    private static final String FIELDS = "REQUEST_TRACE_FIELDS";
+
+    private static final String DEFAULT_FIELDS = "client_id,response_type,redirect_uri,scope,state,login_hint,"
+        + "simva_user_token,grant_type,credentialId,rememberMe,cancel";
+
+    private long samplePercent;
+    private Set<String> fields;
+
+    // Initialize the config from environment variables
+    public RequestTraceConfig() {
+        this.samplePercent = Math.max(0, Math.min(100, EnvConfig.getLong(SAMPLE_PERCENT, 100)));
+        String value = System.getenv(FIELDS);
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : (value != null ? value : DEFAULT_FIELDS).split(",")) {
+            if (!name.isBlank()) {
+                names.add(name.trim());
+            }
+        }
+        this.fields = Collections.unmodifiableSet(names);
+    }
+
+    // Share of requests traced, in percent, once the RequestTrace category logs at DEBUG
+    public long getSamplePercent() {
+        return samplePercent;
+    }
+
+    // Parameters logged in clear; the values of all others are redacted
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(SAMPLE_PERCENT + ": " + samplePercent);
+        logger.info(FIELDS + ": " + String.join(",", fields));
+    }
+}
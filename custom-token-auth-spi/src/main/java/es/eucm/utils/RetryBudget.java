@@ -0,0 +1,56 @@
+package es.eucm.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket bounding extra requests (hedges and retries) to a share of the original ones.
+ * Every original request deposits {@code ratioPercent} hundredths of a token, every extra
+ * request withdraws a whole token, and the balance never exceeds {@code reserve} tokens.
+ * With the ratio capped at 100 %, extra requests never outnumber the original ones beyond the
+ * reserve, so hedging and retrying can at most double the load.
+ */
+public class RetryBudget {
+    private static final long TOKEN = 100;
+
+    private final long ratio;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    public RetryBudget(long ratioPercent, long reserve) {
+        this.ratio = Math.max(0, Math.min(TOKEN, ratioPercent));
+        this.capacity = Math.max(1, reserve) * TOKEN;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    // Called once per original request
+    public void deposit() {
+        if (ratio == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(capacity, current + ratio)));
+    }
+
+    /**
+     * @return whether an extra request may be sent
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    public long getAvailable() {
+        return balance.get() / TOKEN;
+    }
+}
@@ -0,0 +1,24 @@
+package es.eucm.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Study groups store shared by the nodes of a cluster, below the per-node {@link StudyGroupCache}.
+ * Implementations must not throw on reads and writes: a failing store only costs the node its
+ * shared hits, and the node keeps loading from Simva.
+ */
+public interface SharedGroupStore {
+
+    // Shared copy of a study, or null
+    SharedGroups get(String study);
+
+    void put(String study, SharedGroups groups);
+
+    // Notified with the study id when another node stores or removes a study
+    void setChangeListener(Consumer<String> listener);
+
+    // Id of this node in SharedGroups.getWriter()
+    String getNodeId();
+
+    void close();
+}
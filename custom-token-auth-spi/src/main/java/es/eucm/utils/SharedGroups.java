@@ -0,0 +1,144 @@
+package es.eucm.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Group list of a study as kept in a store shared by the nodes, with the wall-clock time it was
+ * loaded from Simva and its HTTP validators. Stored as a JSON string, so the shared store needs
+ * no marshaller for the classes of this module.
+ */
+public final class SharedGroups {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final JsonFactory jsonFactory = objectMapper.getFactory();
+    private static final ObjectReader groupReader = objectMapper.readerFor(SimvaGroup.class);
+
+    private final List<SimvaGroup> groups;
+    private final CacheValidators validators;
+    private final long loadedAt;
+    private final String writer;
+
+    /**
+     * @param loadedAt wall-clock milliseconds of the load from Simva
+     * @param writer id of the node that stored it
+     */
+    public SharedGroups(List<SimvaGroup> groups, CacheValidators validators, long loadedAt, String writer) {
+        this.groups = groups;
+        this.validators = validators;
+        this.loadedAt = loadedAt;
+        this.writer = writer;
+    }
+
+    public List<SimvaGroup> getGroups() {
+        return groups;
+    }
+
+    public CacheValidators getValidators() {
+        return validators;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public String getWriter() {
+        return writer;
+    }
+
+    public String toJson() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeNumberField("loadedAt", loadedAt);
+            json.writeStringField("writer", writer);
+            if (validators != null) {
+                json.writeStringField("etag", validators.getEtag());
+                json.writeStringField("lastModified", validators.getLastModified());
+            }
+            json.writeArrayFieldStart("groups");
+            for (SimvaGroup group : groups) {
+                json.writeStartObject();
+                json.writeStringField("_id", group.getId());
+                json.writeStringField("name", group.getName());
+                if (group.hasParticipants()) {
+                    json.writeArrayFieldStart("participants");
+                    for (String participant : group.getParticipants()) {
+                        json.writeString(participant);
+                    }
+                    json.writeEndArray();
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    // Writer of a stored value, read without parsing the groups (written before them)
+    public static String readWriter(String value) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(value)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("writer".equals(field)) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    public static SharedGroups fromJson(String value) throws IOException {
+        long loadedAt = 0;
+        String writer = null;
+        String etag = null;
+        String lastModified = null;
+        List<SimvaGroup> groups = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(value)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected shared groups value");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "loadedAt":
+                        loadedAt = parser.getLongValue();
+                        break;
+                    case "writer":
+                        writer = parser.getValueAsString();
+                        break;
+                    case "etag":
+                        etag = parser.getValueAsString();
+                        break;
+                    case "lastModified":
+                        lastModified = parser.getValueAsString();
+                        break;
+                    case "groups":
+                        while (token == JsonToken.START_ARRAY && parser.nextToken() == JsonToken.START_OBJECT) {
+                            groups.add(groupReader.readValue(parser));
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        CacheValidators validators = etag == null && lastModified == null ? null : new CacheValidators(etag, lastModified);
+        return new SharedGroups(groups, validators, loadedAt, writer);
+    }
+}
@@ -0,0 +1,145 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class SignedTokenConfig {
+    private static final Logger logger = Logger.getLogger(SignedTokenConfig.class);
+
+    // Define configuration variables
+    private static final String SIGNED_TOKENS = "SIMVA_SIGNED_TOKENS";
+    private static final String JWKS_URL = "SIMVA_JWKS_URL";
+    private static final String JWKS_FILE = "SIMVA_JWKS_FILE";
+    private static final String JWKS_REFRESH = "SIMVA_JWKS_REFRESH";
+    private static final String JWKS_MIN_REFRESH = "SIMVA_JWKS_MIN_REFRESH";
+    private static final String ISSUER = "SIMVA_SIGNED_TOKEN_ISSUER";
+    private static final String AUDIENCE = "SIMVA_SIGNED_TOKEN_AUDIENCE";
+    private static final String TYPE = "SIMVA_SIGNED_TOKEN_TYPE";
+    private static final String CLOCK_SKEW = "SIMVA_SIGNED_TOKEN_CLOCK_SKEW";
+    private static final String MAX_AGE = "SIMVA_SIGNED_TOKEN_MAX_AGE";
+    private static final String REVOCATION_URL = "SIMVA_REVOCATION_URL";
+    private static final String REVOCATION_FILE = "SIMVA_REVOCATION_FILE";
+    private static final String REVOCATION_REFRESH = "SIMVA_REVOCATION_REFRESH";
+
+    private boolean signedTokens;
+    private String jwksUrl;
+    private String jwksFile;
+    private long jwksRefresh;
+    private long jwksMinRefresh;
+    private String issuer;
+    private String audience;
+    private String type;
+    private long clockSkew;
+    private long maxAge;
+    private String revocationUrl;
+    private String revocationFile;
+    private long revocationRefresh;
+
+    // Initialize the config from environment variables
+    public SignedTokenConfig() {
+        this.signedTokens = "true".equalsIgnoreCase(System.getenv(SIGNED_TOKENS));
+        this.jwksUrl = getString(JWKS_URL);
+        this.jwksFile = getString(JWKS_FILE);
+        this.jwksRefresh = EnvConfig.getLong(JWKS_REFRESH, 300000);
+        this.jwksMinRefresh = EnvConfig.getLong(JWKS_MIN_REFRESH, 30000);
+        this.issuer = getString(ISSUER);
+        this.audience = getString(AUDIENCE);
+        this.type = getString(TYPE) != null ? getString(TYPE) : "simva-participant+jwt";
+        this.clockSkew = EnvConfig.getLong(CLOCK_SKEW, 60000);
+        this.maxAge = EnvConfig.getLong(MAX_AGE, 0);
+        this.revocationUrl = getString(REVOCATION_URL);
+        this.revocationFile = getString(REVOCATION_FILE);
+        this.revocationRefresh = EnvConfig.getLong(REVOCATION_REFRESH, 60000);
+    }
+
+    private static String getString(String name) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : null;
+    }
+
+    // Whether Simva-signed participant tokens are verified locally; needs a key set and an audience
+    public boolean isSignedTokens() {
+        if (this.signedTokens && this.audience == null) {
+            logger.warn(SIGNED_TOKENS + " is ignored: " + AUDIENCE + " is not set");
+        }
+        return this.signedTokens && this.audience != null && (this.jwksUrl != null || this.jwksFile != null);
+    }
+
+    // URL of the Simva JWKS; takes precedence over the file
+    public String getJwksUrl() {
+        return this.jwksUrl;
+    }
+
+    // Path of a JWKS file, for deployments without a reachable key endpoint
+    public String getJwksFile() {
+        return this.jwksFile;
+    }
+
+    // Milliseconds between background reloads of the key set
+    public long getJwksRefresh() {
+        return this.jwksRefresh;
+    }
+
+    // Minimum milliseconds between reloads triggered by tokens signed with an unknown key
+    public long getJwksMinRefresh() {
+        return this.jwksMinRefresh;
+    }
+
+    // Expected "iss" claim, not checked when unset
+    public String getIssuer() {
+        return this.issuer;
+    }
+
+    // Required "aud" claim (or one of its values): Simva keys may sign tokens for other purposes
+    public String getAudience() {
+        return this.audience;
+    }
+
+    // Required "typ" header of participant tokens
+    public String getType() {
+        return this.type;
+    }
+
+    // Milliseconds of tolerance on "exp" and "nbf"
+    public long getClockSkew() {
+        return this.clockSkew;
+    }
+
+    // Milliseconds since "iat" a token without "exp" stays valid, if it has a revocable "jti";
+    // 0 requires "exp" on every token
+    public long getMaxAge() {
+        return this.maxAge;
+    }
+
+    // URL of the list of revoked token ids ("jti")
+    public String getRevocationUrl() {
+        return this.revocationUrl;
+    }
+
+    // Path of a revocation list file
+    public String getRevocationFile() {
+        return this.revocationFile;
+    }
+
+    // Milliseconds between polls of the revocation list
+    public long getRevocationRefresh() {
+        return this.revocationRefresh;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(SIGNED_TOKENS + ": " + this.signedTokens);
+        logger.info(JWKS_URL + ": " + (this.jwksUrl != null ? this.jwksUrl : "not set"));
+        logger.info(JWKS_FILE + ": " + (this.jwksFile != null ? this.jwksFile : "not set"));
+        logger.info(JWKS_REFRESH + ": " + this.jwksRefresh);
+        logger.info(JWKS_MIN_REFRESH + ": " + this.jwksMinRefresh);
+        logger.info(ISSUER + ": " + (this.issuer != null ? this.issuer : "not set"));
+        logger.info(AUDIENCE + ": " + (this.audience != null ? this.audience : "not set"));
+        logger.info(TYPE + ": " + this.type);
+        logger.info(CLOCK_SKEW + ": " + this.clockSkew);
+        logger.info(MAX_AGE + ": " + this.maxAge);
+        logger.info(REVOCATION_URL + ": " + (this.revocationUrl != null ? this.revocationUrl : "not set"));
+        logger.info(REVOCATION_FILE + ": " + (this.revocationFile != null ? this.revocationFile : "not set"));
+        logger.info(REVOCATION_REFRESH + ": " + this.revocationRefresh);
+    }
+}
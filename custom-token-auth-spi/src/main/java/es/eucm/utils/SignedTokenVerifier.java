@@ -0,0 +1,435 @@
+package es.eucm.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline verification of Simva-signed participant tokens: compact JWS carrying "study",
+ * "group" and "participant" claims, checked against the Simva key set (SIMVA_JWKS_URL or
+ * SIMVA_JWKS_FILE) without any network call. The key set is reloaded in the background every
+ * SIMVA_JWKS_REFRESH ms, and at most every SIMVA_JWKS_MIN_REFRESH ms when a token names a key
+ * it does not know, which picks up rotated keys before the next scheduled reload; that reload
+ * runs in the background too, and the token naming the key is rejected. Token ids
+ * ("jti") listed by the revocation list (SIMVA_REVOCATION_URL or SIMVA_REVOCATION_FILE, a JSON
+ * array or an object with a "revoked" array) are rejected; the list is polled every
+ * SIMVA_REVOCATION_REFRESH ms. Until the first key set is loaded every signed token is rejected.
+ * Tokens must carry the SIMVA_SIGNED_TOKEN_TYPE "typ" header, the SIMVA_SIGNED_TOKEN_AUDIENCE
+ * audience and a study, so no other token signed by a Simva key is taken for a login.
+ * Tokens must expire: without an "exp" claim a token is only accepted with a "jti" and an "iat"
+ * less than SIMVA_SIGNED_TOKEN_MAX_AGE ms old, and never when that is 0 (the default).
+ */
+public class SignedTokenVerifier {
+    private static final Logger logger = Logger.getLogger(SignedTokenVerifier.class);
+    private static final ObjectReader jsonReader = new ObjectMapper().reader();
+    private static final Base64.Decoder base64Url = Base64.getUrlDecoder();
+
+    /**
+     * Participant named by a valid signed token.
+     */
+    public static final class SignedParticipant {
+        private final String study;
+        private final String group;
+        private final String participant;
+
+        SignedParticipant(String study, String group, String participant) {
+            this.study = study;
+            this.group = group;
+            this.participant = participant;
+        }
+
+        public String getStudy() {
+            return study;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public String getParticipant() {
+            return participant;
+        }
+
+        // Keycloak username of the participant, "<group>_<token>" as for plain tokens
+        public String getUsername() {
+            return group + "_" + participant;
+        }
+    }
+
+    private static final class VerificationKey {
+        final PublicKey key;
+        // "RSA" or "EC"
+        final String type;
+        // Algorithm pinned by the key set, or null
+        final String alg;
+
+        VerificationKey(PublicKey key, String type, String alg) {
+            this.key = key;
+            this.type = type;
+            this.alg = alg;
+        }
+    }
+
+    private final SignedTokenConfig config;
+    private final PolledDocument keySource;
+    private final PolledDocument revocationSource;
+    private final ScheduledExecutorService scheduler;
+    private volatile Map<String, VerificationKey> keys = Collections.emptyMap();
+    private volatile Set<String> revoked = Collections.emptySet();
+    // System.nanoTime of the last key set fetch, successful or not; 0 before the first one
+    private final AtomicLong keysFetchedAt = new AtomicLong();
+
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder revokedHits = new LongAdder();
+    private final LongAdder keyReloads = new LongAdder();
+
+    public SignedTokenVerifier(SignedTokenConfig config, OutboundHttpClient httpClient) {
+        this.config = config;
+        this.keySource = new PolledDocument("Simva key set", config.getJwksUrl(), config.getJwksFile(), httpClient);
+        this.revocationSource = new PolledDocument("Simva revocation list", config.getRevocationUrl(), config.getRevocationFile(), httpClient);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simva-signed-tokens");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Compact JWS: three base64url parts, the first one a JSON object
+    public static boolean looksSigned(String token) {
+        if (token == null || !token.startsWith("eyJ")) {
+            return false;
+        }
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        return second > 0 && token.indexOf('.', second + 1) < 0;
+    }
+
+    /**
+     * Loads the key set and the revocation list on the background thread and schedules their
+     * reloads. Returns immediately.
+     */
+    public void start() {
+        schedule(this::reloadKeysQuietly, 0, Math.max(1000, config.getJwksRefresh()));
+        if (revocationSource.isConfigured()) {
+            schedule(this::reloadRevocationsQuietly, 0, Math.max(1000, config.getRevocationRefresh()));
+        }
+    }
+
+    /**
+     * Verifies a signed participant token.
+     * @param study study the login is for, or null to accept the study of the token
+     * @return the participant, or null if the token is not valid for the study
+     */
+    public SignedParticipant verify(String token, String study) {
+        SignedParticipant participant = null;
+        try {
+            participant = check(token, study);
+        } catch (IOException | RuntimeException e) {
+            logger.debugf("Signed token rejected: %s", e.getMessage());
+        }
+        if (participant != null) {
+            verified.increment();
+        } else {
+            rejected.increment();
+        }
+        return participant;
+    }
+
+    private SignedParticipant check(String token, String study) throws IOException {
+        int first = token.indexOf('.');
+        int second = token.indexOf('.', first + 1);
+        JsonNode header = jsonReader.readTree(base64Url.decode(token.substring(0, first)));
+        String alg = header.path("alg").asText("");
+        String kid = header.path("kid").asText("");
+        if (!isType(header.path("typ").asText(null), config.getType())) {
+            throw new IOException("not a participant token");
+        }
+        String jca = jcaAlgorithm(alg);
+        if (jca == null) {
+            throw new IOException("unsupported algorithm " + alg);
+        }
+        VerificationKey key = keys.get(kid);
+        if (key == null) {
+            reloadKeysForUnknownKid();
+            throw new IOException("unknown key " + kid);
+        }
+        if (!alg.startsWith(key.type.equals("RSA") ? "RS" : "ES") || (key.alg != null && !key.alg.equals(alg))) {
+            throw new IOException("algorithm " + alg + " does not match key " + kid);
+        }
+        if (!verifySignature(jca, key.key, token.substring(0, second), base64Url.decode(token.substring(second + 1)))) {
+            logger.debugf("Signed token with a bad signature (key %s)", kid);
+            return null;
+        }
+
+        JsonNode claims = jsonReader.readTree(base64Url.decode(token.substring(first + 1, second)));
+        long now = System.currentTimeMillis();
+        long skew = config.getClockSkew();
+        String jti = claims.path("jti").asText(null);
+        if (claims.path("exp").isNumber()) {
+            if (TimeUnit.SECONDS.toMillis(claims.get("exp").asLong()) + skew < now) {
+                throw new IOException("expired");
+            }
+        } else if (config.getMaxAge() <= 0 || jti == null || !claims.path("iat").isNumber()) {
+            // A token that never expires could only be withdrawn through the revocation list
+            throw new IOException("no expiry: exp, or jti and iat with SIMVA_SIGNED_TOKEN_MAX_AGE, required");
+        } else {
+            long issuedAt = TimeUnit.SECONDS.toMillis(claims.get("iat").asLong());
+            if (issuedAt - skew > now) {
+                throw new IOException("issued in the future");
+            }
+            if (issuedAt + config.getMaxAge() + skew < now) {
+                throw new IOException("too old");
+            }
+        }
+        if (claims.has("nbf") && TimeUnit.SECONDS.toMillis(claims.get("nbf").asLong()) - skew > now) {
+            throw new IOException("not yet valid");
+        }
+        if (config.getIssuer() != null && !config.getIssuer().equals(claims.path("iss").asText(null))) {
+            throw new IOException("unexpected issuer");
+        }
+        if (!hasAudience(claims.path("aud"), config.getAudience())) {
+            throw new IOException("unexpected audience");
+        }
+        if (jti != null && revoked.contains(jti)) {
+            revokedHits.increment();
+            throw new IOException("revoked");
+        }
+        String tokenStudy = claims.path("study").asText(null);
+        String group = claims.path("group").asText(null);
+        String participant = claims.path("participant").asText(claims.path("sub").asText(null));
+        // Without a study from the login either, the token's own study is the only scope left
+        if (tokenStudy == null || tokenStudy.isEmpty() || group == null || participant == null) {
+            throw new IOException("missing participant claims");
+        }
+        if (study != null && !study.isEmpty() && !study.equals(tokenStudy)) {
+            throw new IOException("token of another study");
+        }
+        return new SignedParticipant(tokenStudy, group, participant);
+    }
+
+    // "typ" as in RFC 7515: the "application/" prefix may be left out, and case does not matter
+    private static boolean isType(String typ, String expected) {
+        if (typ == null) {
+            return false;
+        }
+        if (typ.regionMatches(true, 0, "application/", 0, 12)) {
+            typ = typ.substring(12);
+        }
+        return typ.equalsIgnoreCase(expected);
+    }
+
+    // "aud" is a string or an array of strings
+    private static boolean hasAudience(JsonNode aud, String expected) {
+        if (aud.isArray()) {
+            for (JsonNode value : aud) {
+                if (expected.equals(value.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return aud.isTextual() && expected.equals(aud.asText());
+    }
+
+    private static boolean verifySignature(String jca, PublicKey key, String signingInput, byte[] signature) throws IOException {
+        try {
+            Signature verifier = Signature.getInstance(jca);
+            verifier.initVerify(key);
+            verifier.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("signature check failed: " + e.getMessage(), e);
+        }
+    }
+
+    // JCA name of a JWS algorithm; ECDSA signatures are the raw R||S of RFC 7518
+    private static String jcaAlgorithm(String alg) {
+        switch (alg) {
+            case "RS256": return "SHA256withRSA";
+            case "RS384": return "SHA384withRSA";
+            case "RS512": return "SHA512withRSA";
+            case "ES256": return "SHA256withECDSAinP1363Format";
+            case "ES384": return "SHA384withECDSAinP1363Format";
+            case "ES512": return "SHA512withECDSAinP1363Format";
+            default: return null;
+        }
+    }
+
+    /**
+     * Reloads the key set if it changed.
+     * @return true if new keys were installed
+     */
+    public synchronized boolean reloadKeys() throws IOException {
+        keysFetchedAt.set(System.nanoTime());
+        ConditionalResponse<byte[]> response = keySource.fetch();
+        if (response.isNotModified()) {
+            return false;
+        }
+        Map<String, VerificationKey> parsed = parseKeySet(response.getBody());
+        if (parsed.isEmpty()) {
+            // Keep the keys we have rather than rejecting every token
+            keySource.reset();
+            throw new IOException("No usable signing key in " + keySource);
+        }
+        keys = parsed;
+        keyReloads.increment();
+        logger.infof("Loaded %d signing keys from %s", parsed.size(), keySource);
+        return true;
+    }
+
+    // Rotation: a token signed with an unknown key triggers a background reload, at most every
+    // SIMVA_JWKS_MIN_REFRESH ms counted from the last fetch, failed ones included. The token
+    // itself is rejected: logins never wait for the key set endpoint.
+    private void reloadKeysForUnknownKid() {
+        long now = System.nanoTime();
+        long last = keysFetchedAt.get();
+        if (last != 0 && now - last < TimeUnit.MILLISECONDS.toNanos(config.getJwksMinRefresh())) {
+            return;
+        }
+        if (keysFetchedAt.compareAndSet(last, now)) {
+            try {
+                scheduler.execute(this::reloadKeysQuietly);
+            } catch (RejectedExecutionException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void reloadKeysQuietly() {
+        try {
+            reloadKeys();
+        } catch (IOException | RuntimeException e) {
+            logger.infof("Unable to reload %s: %s", keySource, e);
+        }
+    }
+
+    /**
+     * Reloads the revocation list if it changed.
+     */
+    public void reloadRevocations() throws IOException {
+        ConditionalResponse<byte[]> response = revocationSource.fetch();
+        if (response.isNotModified()) {
+            return;
+        }
+        JsonNode root = jsonReader.readTree(response.getBody());
+        JsonNode list = root.isArray() ? root : root.path("revoked");
+        if (!list.isArray()) {
+            throw new IOException("Unexpected revocation list payload");
+        }
+        Set<String> ids = new HashSet<>(list.size() * 2);
+        for (JsonNode id : list) {
+            ids.add(id.asText());
+        }
+        revoked = ids;
+        logger.debugf("Loaded %d revoked token ids from %s", ids.size(), revocationSource);
+    }
+
+    private void reloadRevocationsQuietly() {
+        try {
+            reloadRevocations();
+        } catch (IOException | RuntimeException e) {
+            revocationSource.reset();
+            logger.infof("Unable to reload %s: %s", revocationSource, e);
+        }
+    }
+
+    private static Map<String, VerificationKey> parseKeySet(byte[] content) throws IOException {
+        JsonNode root = jsonReader.readTree(content);
+        Map<String, VerificationKey> parsed = new HashMap<>();
+        for (JsonNode jwk : root.path("keys")) {
+            String use = jwk.path("use").asText("sig");
+            if (!"sig".equals(use)) {
+                continue;
+            }
+            try {
+                VerificationKey key = parseKey(jwk);
+                if (key != null) {
+                    parsed.put(jwk.path("kid").asText(""), key);
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                logger.infof("Skipping signing key %s: %s", jwk.path("kid").asText(""), e);
+            }
+        }
+        return parsed;
+    }
+
+    private static VerificationKey parseKey(JsonNode jwk) throws GeneralSecurityException {
+        String alg = jwk.hasNonNull("alg") ? jwk.get("alg").asText() : null;
+        switch (jwk.path("kty").asText("")) {
+            case "RSA": {
+                RSAPublicKeySpec spec = new RSAPublicKeySpec(unsigned(jwk, "n"), unsigned(jwk, "e"));
+                return new VerificationKey(KeyFactory.getInstance("RSA").generatePublic(spec), "RSA", alg);
+            }
+            case "EC": {
+                String curve;
+                switch (jwk.path("crv").asText("")) {
+                    case "P-256": curve = "secp256r1"; break;
+                    case "P-384": curve = "secp384r1"; break;
+                    case "P-521": curve = "secp521r1"; break;
+                    default: return null;
+                }
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(curve));
+                ECPoint point = new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y"));
+                ECPublicKeySpec spec = new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class));
+                return new VerificationKey(KeyFactory.getInstance("EC").generatePublic(spec), "EC", alg);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static BigInteger unsigned(JsonNode jwk, String field) {
+        return new BigInteger(1, base64Url.decode(jwk.path(field).asText("")));
+    }
+
+    private void schedule(Runnable task, long delayMillis, long periodMillis) {
+        try {
+            scheduler.scheduleWithFixedDelay(task, delayMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    public boolean hasKeys() {
+        return !keys.isEmpty();
+    }
+
+    public String stats() {
+        return "verified=" + verified.sum() + ", rejected=" + rejected.sum() + ", revoked=" + revokedHits.sum()
+            + ", keys=" + keys.size() + ", keyReloads=" + keyReloads.sum() + ", revokedIds=" + revoked.size();
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
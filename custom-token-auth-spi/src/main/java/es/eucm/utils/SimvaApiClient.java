@@ -4,16 +4,20 @@ import es.eucm.utils.SimvaApiConfig;
 
 import org.jboss.logging.Logger;
 
-import java.net.URL;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.List;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Collections;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.core.type.TypeReference;
 import okhttp3.*;
@@ -22,24 +26,67 @@ public class SimvaApiClient {
     private static final Logger logger = Logger.getLogger(SimvaApiClient.class);
 
     private static SimvaApiConfig apiConfig = new SimvaApiConfig();
-    private String bearerToken;
-    private OkHttpClient client;
+
+    // Shared, immutable readers: built once, safe to use from any thread
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final ObjectReader treeReader = objectMapper.reader();
+    private static final ObjectReader mapReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {});
+    private static final ObjectReader listReader = objectMapper.readerFor(new TypeReference<List<Map<String, Object>>>() {});
+    private static final ObjectReader groupReader = objectMapper.readerFor(SimvaGroup.class);
+    private static final ObjectReader studyReader = objectMapper.readerFor(SimvaStudy.class);
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(Response response) throws IOException;
+    }
+    private final SimvaTokenManager tokenManager;
+    private final OutboundHttpClient httpClient;
+    private final DownstreamGuard guard;
+    private final HedgedGetExecutor getExecutor;
+
+    public SimvaApiClient(OutboundHttpClient httpClient, DownstreamGuardConfig guardConfig) {
+        this.httpClient = httpClient;
+        this.guard = new DownstreamGuard("simva-api", guardConfig);
+        this.getExecutor = new HedgedGetExecutor(httpClient.client(), this.guard, apiConfig);
+        this.tokenManager = new SimvaTokenManager(this::login, apiConfig);
+    }
+
+    public SimvaApiClient(OutboundHttpClient httpClient) {
+        this(httpClient, new DownstreamGuardConfig("SIMVA_API"));
+    }
+
     public SimvaApiClient() {
-        try {
-            // Create a new HTTP client
-            this.client = new OkHttpClient().newBuilder().build();
-        } catch(Exception e) {
-            logger.info(e.toString());
-        }
+        this(OutboundHttpClient.shared());
+    }
+
+    // Node-wide pooled client, owned by CustomAuthenticatorFactory
+    private OkHttpClient client() {
+        return this.httpClient.client();
+    }
+
+    // Circuit breaker and bulkhead shared by every call to the Simva API
+    public DownstreamGuard getGuard() {
+        return this.guard;
+    }
+
+    // Hedging and retry statistics of the idempotent GETs
+    public HedgedGetExecutor getGetExecutor() {
+        return this.getExecutor;
     }
 
     public boolean isAuthentificated() {
-        return this.bearerToken != null;
+        return this.tokenManager.hasToken();
     }
 
+    // Forces a fresh admin login; requests otherwise log in lazily and refresh before expiry
     public void authenticate() throws IOException {
-        // Create an ObjectMapper instance
-        ObjectMapper objectMapper = new ObjectMapper();
+        this.tokenManager.refreshNow();
+        logger.info("Authenticated in Simva as " + apiConfig.getAdminUsername());
+    }
+
+    // Logs in to /users/login and returns the raw admin token
+    private String login() throws IOException {
         // Create a JSON object using ObjectNode
         ObjectNode payload = objectMapper.createObjectNode();
         payload.put("username", apiConfig.getAdminUsername());
@@ -47,94 +94,173 @@ public class SimvaApiClient {
         // Convert the JSON object to a string
         String jsonPayload = objectMapper.writeValueAsString(payload);
         // Define the API URL
-        String apiUrl = "/users/login";
-        // Read the body of the response into a hashmap
-        Map<String,Object> responseMap = this.sendPostRequest(apiUrl, jsonPayload);
-        // Read the value of the "access_token" key from the hashmap 
-        this.bearerToken = "Bearer " + (String)responseMap.get("token");
-        logger.info("Token: " + this.bearerToken);
+        Request request = buildRequest(apiConfig.getApiUrl() + "/users/login",
+            RequestBody.create(jsonPayload, MediaType.parse("application/json")), null);
+        return this.send(request, response -> {
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code(), "Simva login failed: " + response.code());
+            }
+            JsonNode token = treeReader.readTree(response.body().byteStream()).get("token");
+            return token != null ? token.asText() : null;
+        });
     }
 
     // Method to send GET request
     public Map<String, Object> sendGetRequest(String concat_url) throws IOException {
-        // Construct the URL
-        String urlString = apiConfig.getApiUrl() + concat_url;
-        logger.info("urlString: " + urlString);
-        URL url = new URL(urlString);
-        // Build the request object, with method, headers
-        Request request;
-        if(this.isAuthentificated()) {
-            request = new Request.Builder()
-                .url(urlString)
-                .get()
-                .addHeader("Authorization", this.bearerToken)
-                .addHeader("Content-Type", "application/json")
-                .build();
+        return this.execute(concat_url, null, this::readBody);
+    }
+
+    /**
+     * Fetches the groups of a study, binding the response array group by group as it is read.
+     */
+    public List<SimvaGroup> getStudyGroups(String study) throws IOException {
+        return this.getStudyGroups(study, null).getBody();
+    }
+
+    /**
+     * Fetches the groups of a study with a conditional GET. When Simva answers 304 Not Modified
+     * the body is neither downloaded nor parsed.
+     * @param validators validators of the cached copy, or null for an unconditional fetch
+     */
+    public ConditionalResponse<List<SimvaGroup>> getStudyGroups(String study, CacheValidators validators) throws IOException {
+        return this.execute("/studies/" + study + "/groups", null, validators, response -> {
+            if (validators != null && response.code() == 304) {
+                return ConditionalResponse.notModified(CacheValidators.from(response, validators));
+            }
+            return ConditionalResponse.modified(readGroups(successfulBody(response)), CacheValidators.from(response, null));
+        });
+    }
+
+    public SimvaStudy getStudy(String study) throws IOException {
+        return this.execute("/studies/" + study, null, response -> studyReader.readValue(successfulBody(response)));
+    }
+
+    private static InputStream successfulBody(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new HttpStatusException(response.code(),
+                "Simva request failed: " + response.code() + " " + response.request().url().encodedPath());
+        }
+        return response.body().byteStream();
+    }
+
+    /**
+     * Streams a JSON array of groups into typed objects; unknown fields are skipped by the parser.
+     */
+    public static List<SimvaGroup> readGroups(InputStream in) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Unexpected groups payload: " + parser.currentToken());
+            }
+            List<SimvaGroup> groups = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                groups.add(groupReader.readValue(parser));
+            }
+            return groups;
+        }
+    }
+
+    private Request buildRequest(String urlString, RequestBody body, String bearerToken) {
+        return buildRequest(urlString, body, bearerToken, null);
+    }
+
+    private Request buildRequest(String urlString, RequestBody body, String bearerToken, CacheValidators validators) {
+        Request.Builder builder = new Request.Builder()
+            .url(urlString)
+            .addHeader("Content-Type", "application/json");
+        if (validators != null) {
+            validators.apply(builder);
+        }
+        if (body != null) {
+            builder.method("POST", body);
         } else {
-             request = new Request.Builder()
-                .url(urlString)
-                .get()
-                .addHeader("Content-Type", "application/json")
-                .build();
+            builder.get();
         }
+        if (bearerToken != null) {
+            builder.addHeader("Authorization", bearerToken);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Performs an authenticated request. A 401 answer drops the admin token and the request
+     * is retried once with a freshly issued one.
+     */
+    private <T> T execute(String concat_url, RequestBody body, BodyReader<T> reader) throws IOException {
+        return this.execute(concat_url, body, null, reader);
+    }
+
+    private <T> T execute(String concat_url, RequestBody body, CacheValidators validators, BodyReader<T> reader) throws IOException {
+        // Construct the URL
+        String urlString = apiConfig.getApiUrl() + concat_url;
+        logger.debugf("urlString: %s", urlString);
+        String bearerToken = this.tokenManager.getBearerToken();
         // Perform the request, this potentially throws an IOException
-        Response response = this.client.newCall(request).execute();
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode = objectMapper.readTree(response.body().byteStream());
-        return this.parseJson(objectMapper, jsonNode);
+        try {
+            return this.send(buildRequest(urlString, body, bearerToken, validators), reader);
+        } catch (HttpStatusException e) {
+            if (e.getCode() != 401) {
+                throw e;
+            }
+        }
+        logger.info("Simva rejected the admin token, logging in again");
+        this.tokenManager.invalidate(bearerToken);
+        bearerToken = this.tokenManager.getBearerToken();
+        return this.send(buildRequest(urlString, body, bearerToken, validators), reader);
+    }
+
+    /**
+     * Runs one round-trip through the guard; GETs are idempotent and may be hedged or retried.
+     * 401 and 5xx answers are raised as {@link HttpStatusException} so that only server errors
+     * count against the breaker.
+     */
+    private <T> T send(Request request, BodyReader<T> reader) throws IOException {
+        BodyReader<T> checked = response -> {
+            if (response.code() == 401 || response.code() >= 500) {
+                throw new HttpStatusException(response.code(),
+                    "Simva request failed: " + response.code() + " " + request.url().encodedPath());
+            }
+            return reader.read(response);
+        };
+        if ("GET".equals(request.method())) {
+            return this.getExecutor.execute(request, checked::read);
+        }
+        return this.guard.call(() -> {
+            try (Response response = this.client().newCall(request).execute()) {
+                return checked.read(response);
+            }
+        });
+    }
+
+    private Map<String, Object> readBody(Response response) throws IOException {
+        JsonNode jsonNode = treeReader.readTree(response.body().byteStream());
+        return this.parseJson(jsonNode);
     }
 
-    public Map<String, Object> parseJson(ObjectMapper objectMapper, JsonNode jsonNode) {
+    // Generic responses: objects are returned as maps, arrays are keyed by their index
+    public Map<String, Object> parseJson(JsonNode jsonNode) throws IOException {
         if (jsonNode.isArray()) {
-            List<Map<String, Object>> responseList = objectMapper.convertValue(jsonNode, new TypeReference<>() {});
-            Map<String, Object> result = new HashMap<>();
+            List<Map<String, Object>> responseList = listReader.readValue(jsonNode);
+            Map<String, Object> result = new LinkedHashMap<>();
             for (int i = 0; i < responseList.size(); i++) {
                 result.put(String.valueOf(i), responseList.get(i)); // Use index as key
             }
-            logger.info("Parsed as a List, converted to Map: " + result);
+            logger.debug("Parsed a list of " + result.size() + " elements");
             return result;
         } else if (jsonNode.isObject()) {
-            Map<String, Object> responseMap = objectMapper.convertValue(jsonNode, new TypeReference<>() {});
-            logger.info("Parsed as a Map: " + responseMap);
+            Map<String, Object> responseMap = mapReader.readValue(jsonNode);
+            logger.debug("Parsed an object with " + responseMap.size() + " fields");
             return responseMap;
         } else {
-            logger.info("Unexpected JSON structure: " + jsonNode);
+            logger.info("Unexpected JSON structure: " + jsonNode.getNodeType());
             return Collections.emptyMap(); // Return an empty map for unexpected cases
         }
     }
 
     //// Method to send POST request with JSON body (if needed)
     public Map<String, Object> sendPostRequest(String concat_url, String jsonBody) throws IOException {
-        // Construct the URL
-        String urlString = apiConfig.getApiUrl() + concat_url;
-        logger.info("urlString: " + urlString);
-        URL url = new URL(urlString);
-
         // Create the request body
         MediaType mediaType = MediaType.parse("application/json");
         RequestBody body = RequestBody.create(jsonBody, mediaType);
-        // Build the request object, with method, headers
-        Request request;
-        if(this.isAuthentificated()) {
-            request = new Request.Builder()
-                    .url(urlString)
-                    .method("POST", body)
-                    .addHeader("Authorization", this.bearerToken)
-                    .addHeader("Content-Type", "application/json")
-                    .build();   
-        } else {
-            request = new Request.Builder()
-                .url(urlString)
-                .method("POST", body)
-                .addHeader("Content-Type", "application/json")
-                .build();
-        }
-
-        // Perform the request, this potentially throws an IOException
-        Response response = this.client.newCall(request).execute();
-        // Read the body of the response into a map
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode = objectMapper.readTree(response.body().byteStream());
-        return this.parseJson(objectMapper, jsonNode);
+        return this.execute(concat_url, body, this::readBody);
     }
 }
\ No newline at end of file
@@ -2,6 +2,9 @@ package es.eucm.utils;
 
 import org.jboss.logging.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SimvaApiConfig {
     private static final Logger logger = Logger.getLogger(SimvaApiConfig.class);
 
@@ -9,16 +12,81 @@ public class SimvaApiConfig {
     private static final String SIMVA_API_URL = "SIMVA_API_URL";
     private static final String SIMVA_API_ADMIN_USERNAME = "SIMVA_API_ADMIN_USERNAME";
     private static final String SIMVA_API_ADMIN_PASSWORD = "SIMVA_API_ADMIN_PASSWORD";
+    private static final String SIMVA_API_TOKEN_REFRESH_SKEW = "SIMVA_API_TOKEN_REFRESH_SKEW";
+    private static final String SIMVA_API_TOKEN_DEFAULT_TTL = "SIMVA_API_TOKEN_DEFAULT_TTL";
+    private static final String SIMVA_GROUPS_CACHE_TTL = "SIMVA_GROUPS_CACHE_TTL";
+    private static final String SIMVA_GROUPS_CACHE_REFRESH_AHEAD = "SIMVA_GROUPS_CACHE_REFRESH_AHEAD";
+    private static final String SIMVA_GROUPS_CACHE_MAX_SIZE = "SIMVA_GROUPS_CACHE_MAX_SIZE";
+    private static final String SIMVA_GROUPS_RELOAD_MIN_AGE = "SIMVA_GROUPS_RELOAD_MIN_AGE";
+    private static final String SIMVA_GET_HEDGE_PERCENTILE = "SIMVA_GET_HEDGE_PERCENTILE";
+    private static final String SIMVA_GET_HEDGE_MIN_DELAY = "SIMVA_GET_HEDGE_MIN_DELAY";
+    private static final String SIMVA_GET_HEDGE_INITIAL_DELAY = "SIMVA_GET_HEDGE_INITIAL_DELAY";
+    private static final String SIMVA_GET_MAX_RETRIES = "SIMVA_GET_MAX_RETRIES";
+    private static final String SIMVA_GET_RETRY_BASE_DELAY = "SIMVA_GET_RETRY_BASE_DELAY";
+    private static final String SIMVA_GET_RETRY_MAX_DELAY = "SIMVA_GET_RETRY_MAX_DELAY";
+    private static final String SIMVA_GET_RETRY_BUDGET = "SIMVA_GET_RETRY_BUDGET";
+    private static final String SIMVA_GET_RETRY_BUDGET_RESERVE = "SIMVA_GET_RETRY_BUDGET_RESERVE";
+    private static final String SIMVA_WARMUP = "SIMVA_WARMUP";
+    private static final String SIMVA_WARMUP_STUDIES = "SIMVA_WARMUP_STUDIES";
+    private static final String SIMVA_WARMUP_CONNECTIONS = "SIMVA_WARMUP_CONNECTIONS";
+    private static final String SIMVA_WARMUP_MAX_ATTEMPTS = "SIMVA_WARMUP_MAX_ATTEMPTS";
+    private static final String SIMVA_WARMUP_RETRY_DELAY = "SIMVA_WARMUP_RETRY_DELAY";
 
     private String simvaApiUrl;
     private String simvaApiAdminUsername;
     private String simvaApiAdminPassword;
+    private long tokenRefreshSkew;
+    private long tokenDefaultTtl;
+    private long groupsCacheTtl;
+    private long groupsCacheRefreshAhead;
+    private long groupsCacheMaxSize;
+    private long groupsReloadMinAge;
+    private long getHedgePercentile;
+    private long getHedgeMinDelay;
+    private long getHedgeInitialDelay;
+    private long getMaxRetries;
+    private long getRetryBaseDelay;
+    private long getRetryMaxDelay;
+    private long getRetryBudget;
+    private long getRetryBudgetReserve;
+    private boolean warmup;
+    private List<String> warmupStudies;
+    private long warmupConnections;
+    private long warmupMaxAttempts;
+    private long warmupRetryDelay;
 
     // Initialize the config from environment variables
     public SimvaApiConfig() {
         this.simvaApiUrl = System.getenv(SIMVA_API_URL);
         this.simvaApiAdminUsername = System.getenv(SIMVA_API_ADMIN_USERNAME);
         this.simvaApiAdminPassword = System.getenv(SIMVA_API_ADMIN_PASSWORD);
+        this.tokenRefreshSkew = EnvConfig.getLong(SIMVA_API_TOKEN_REFRESH_SKEW, 60);
+        this.tokenDefaultTtl = EnvConfig.getLong(SIMVA_API_TOKEN_DEFAULT_TTL, 300);
+        this.groupsCacheTtl = EnvConfig.getLong(SIMVA_GROUPS_CACHE_TTL, 60);
+        this.groupsCacheRefreshAhead = EnvConfig.getLong(SIMVA_GROUPS_CACHE_REFRESH_AHEAD, 15);
+        this.groupsCacheMaxSize = EnvConfig.getLong(SIMVA_GROUPS_CACHE_MAX_SIZE, 256);
+        this.groupsReloadMinAge = EnvConfig.getLong(SIMVA_GROUPS_RELOAD_MIN_AGE, 10);
+        this.getHedgePercentile = EnvConfig.getLong(SIMVA_GET_HEDGE_PERCENTILE, 95);
+        this.getHedgeMinDelay = EnvConfig.getLong(SIMVA_GET_HEDGE_MIN_DELAY, 20);
+        this.getHedgeInitialDelay = EnvConfig.getLong(SIMVA_GET_HEDGE_INITIAL_DELAY, 1000);
+        this.getMaxRetries = EnvConfig.getLong(SIMVA_GET_MAX_RETRIES, 2);
+        this.getRetryBaseDelay = EnvConfig.getLong(SIMVA_GET_RETRY_BASE_DELAY, 100);
+        this.getRetryMaxDelay = EnvConfig.getLong(SIMVA_GET_RETRY_MAX_DELAY, 1000);
+        this.getRetryBudget = EnvConfig.getLong(SIMVA_GET_RETRY_BUDGET, 20);
+        this.getRetryBudgetReserve = EnvConfig.getLong(SIMVA_GET_RETRY_BUDGET_RESERVE, 10);
+        this.warmup = !"false".equalsIgnoreCase(System.getenv(SIMVA_WARMUP));
+        this.warmupStudies = new ArrayList<>();
+        String studies = System.getenv(SIMVA_WARMUP_STUDIES);
+        if (studies != null) {
+            for (String study : studies.split(",")) {
+                if (!study.isBlank()) {
+                    this.warmupStudies.add(study.trim());
+                }
+            }
+        }
+        this.warmupConnections = EnvConfig.getLong(SIMVA_WARMUP_CONNECTIONS, 4);
+        this.warmupMaxAttempts = EnvConfig.getLong(SIMVA_WARMUP_MAX_ATTEMPTS, 5);
+        this.warmupRetryDelay = EnvConfig.getLong(SIMVA_WARMUP_RETRY_DELAY, 2000);
     }
 
     // Getters for each environment variable
@@ -34,11 +102,125 @@ public class SimvaApiConfig {
         return simvaApiAdminPassword;
     }
 
+    // Seconds before the admin token expires at which it is renewed
+    public long getTokenRefreshSkew() {
+        return tokenRefreshSkew;
+    }
+
+    // Lifetime in seconds assumed for admin tokens without an "exp" claim
+    public long getTokenDefaultTtl() {
+        return tokenDefaultTtl;
+    }
+
+    // Seconds a study group list is served from cache (0 disables the cache)
+    public long getGroupsCacheTtl() {
+        return groupsCacheTtl;
+    }
+
+    // Seconds before expiry at which a background refresh is started
+    public long getGroupsCacheRefreshAhead() {
+        return groupsCacheRefreshAhead;
+    }
+
+    // Maximum number of studies kept in the cache
+    public long getGroupsCacheMaxSize() {
+        return groupsCacheMaxSize;
+    }
+
+    // Minimum age in seconds of a cached group list before an unknown participant token forces a reload
+    public long getGroupsReloadMinAge() {
+        return groupsReloadMinAge;
+    }
+
+    // Latency percentile of Simva GETs after which a hedged request is sent (0 disables hedging)
+    public long getGetHedgePercentile() {
+        return getHedgePercentile;
+    }
+
+    // Lower bound in milliseconds of the hedging delay
+    public long getGetHedgeMinDelay() {
+        return getHedgeMinDelay;
+    }
+
+    // Hedging delay in milliseconds used until enough latencies have been observed
+    public long getGetHedgeInitialDelay() {
+        return getHedgeInitialDelay;
+    }
+
+    // Retries of a Simva GET after a transient error
+    public long getGetMaxRetries() {
+        return getMaxRetries;
+    }
+
+    // Base of the jittered exponential backoff between retries, in milliseconds
+    public long getGetRetryBaseDelay() {
+        return getRetryBaseDelay;
+    }
+
+    // Cap of the backoff between retries, in milliseconds
+    public long getGetRetryMaxDelay() {
+        return getRetryMaxDelay;
+    }
+
+    // Extra requests (hedges and retries) allowed, as a percentage of GETs (at most 100)
+    public long getGetRetryBudget() {
+        return getRetryBudget;
+    }
+
+    // Extra requests that can be banked before any GET has been made
+    public long getGetRetryBudgetReserve() {
+        return getRetryBudgetReserve;
+    }
+
+    // Whether postInit starts a background warm-up of the Simva service
+    public boolean isWarmup() {
+        return warmup;
+    }
+
+    // Studies whose groups are prefetched by the warm-up (comma-separated ids)
+    public List<String> getWarmupStudies() {
+        return warmupStudies;
+    }
+
+    // Connections opened in parallel to the realm token endpoint by the warm-up
+    public long getWarmupConnections() {
+        return warmupConnections;
+    }
+
+    // Attempts of each warm-up step before the node reports itself ready without it
+    public long getWarmupMaxAttempts() {
+        return warmupMaxAttempts;
+    }
+
+    // Milliseconds between two attempts of a failed warm-up step
+    public long getWarmupRetryDelay() {
+        return warmupRetryDelay;
+    }
+
     // Utility method to print all variables (optional)
     public void printConfig() {
         logger.info("Config values:");
         logger.info(SIMVA_API_URL + ": " + (simvaApiUrl != null ? simvaApiUrl : "not set"));
         logger.info(SIMVA_API_ADMIN_USERNAME + ": " + (simvaApiAdminUsername != null ? simvaApiAdminUsername : "not set"));
-        logger.info(SIMVA_API_ADMIN_PASSWORD + ": " + (simvaApiAdminPassword != null ? simvaApiAdminPassword : "not set"));
+        logger.info(SIMVA_API_ADMIN_PASSWORD + ": " + (simvaApiAdminPassword != null ? "set" : "not set"));
+        logger.info(SIMVA_API_TOKEN_REFRESH_SKEW + ": " + tokenRefreshSkew);
+        logger.info(SIMVA_API_TOKEN_DEFAULT_TTL + ": " + tokenDefaultTtl);
+        logger.info(SIMVA_GROUPS_CACHE_TTL + ": " + groupsCacheTtl);
+        logger.info(SIMVA_GROUPS_CACHE_REFRESH_AHEAD + ": " + groupsCacheRefreshAhead);
+        logger.info(SIMVA_GROUPS_CACHE_MAX_SIZE + ": " + groupsCacheMaxSize);
+        logger.info(SIMVA_GROUPS_RELOAD_MIN_AGE + ": " + groupsReloadMinAge);
+        logger.info(SIMVA_GET_HEDGE_PERCENTILE + ": " + getHedgePercentile);
+        logger.info(SIMVA_GET_HEDGE_MIN_DELAY + ": " + getHedgeMinDelay);
+        logger.info(SIMVA_GET_HEDGE_INITIAL_DELAY + ": " + getHedgeInitialDelay);
+        logger.info(SIMVA_GET_MAX_RETRIES + ": " + getMaxRetries);
+        logger.info(SIMVA_GET_RETRY_BASE_DELAY + ": " + getRetryBaseDelay);
+        logger.info(SIMVA_GET_RETRY_MAX_DELAY + ": " + getRetryMaxDelay);
+        logger.info(SIMVA_GET_RETRY_BUDGET + ": " + getRetryBudget);
+        logger.info(SIMVA_GET_RETRY_BUDGET_RESERVE + ": " + getRetryBudgetReserve);
+        logger.info(SIMVA_WARMUP + ": " + warmup);
+        logger.info(SIMVA_WARMUP_STUDIES + ": " + String.join(",", warmupStudies));
+        logger.info(SIMVA_WARMUP_CONNECTIONS + ": " + warmupConnections);
+        logger.info(SIMVA_WARMUP_MAX_ATTEMPTS + ": " + warmupMaxAttempts);
+        logger.info(SIMVA_WARMUP_RETRY_DELAY + ": " + warmupRetryDelay);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package es.eucm.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Group of a Simva study, as returned by /studies/{id}/groups.
+ * Only the fields the authenticators need are bound; everything else is skipped by the parser.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SimvaGroup {
+
+    @JsonProperty("_id")
+    private String id;
+
+    @JsonProperty("name")
+    private String name;
+
+    // null when the payload carries no participant list at all
+    @JsonProperty("participants")
+    @JsonDeserialize(using = ParticipantListDeserializer.class)
+    private List<String> participants;
+
+    public SimvaGroup() {
+    }
+
+    public SimvaGroup(String id, String name, List<String> participants) {
+        this.id = id;
+        this.name = name;
+        this.participants = participants;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getParticipants() {
+        return participants;
+    }
+
+    public boolean hasParticipants() {
+        return participants != null;
+    }
+
+    public List<String> getParticipantsOrEmpty() {
+        return participants != null ? participants : Collections.emptyList();
+    }
+}
@@ -2,72 +2,500 @@ package es.eucm.utils;
 
 import es.eucm.utils.SimvaApiClient;
 import es.eucm.utils.KeycloakOAuth2Client;
+import es.eucm.utils.KeycloakConfig;
+import es.eucm.utils.LocalCredentialVerifier;
 import java.util.AbstractMap.SimpleEntry;
 
 import java.io.IOException;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
 import org.jboss.logging.Logger;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
 
 public class SimvaKeycloakCheck {
     private static final Logger logger = Logger.getLogger(SimvaKeycloakCheck.class);
 
-    private static SimvaApiClient simvaClient = new SimvaApiClient();  // Initialize client from environment variables
-    private static KeycloakOAuth2Client keycloakClient = new KeycloakOAuth2Client();
+    private final SimvaApiClient simvaClient;
+    private final KeycloakOAuth2Client keycloakClient;
+    private final LogoutQueue logoutQueue;
+    private final KeycloakConfig keycloakConfig;
+    private final LocalCredentialVerifier localVerifier;
+    private final SimvaApiConfig simvaConfig;
+    private final StudyGroupCache groupCache;
+    private final StudyParticipantIndex participantIndex;
+    private final ParallelCandidateValidator candidateValidator;
+    private final AuthMetrics metrics;
+    private final SimvaWarmup warmup;
+    private final Gauge warmupGauge;
+    private final AdmissionController admission;
+    private final SingleFlight<String, SimpleEntry<Boolean, String>> tokenFlights;
+    private final SignedTokenVerifier signedTokens;
+    private final TokenThrottle throttle;
+    private final TokenThrottledException throttled = new TokenThrottledException("Too many wrong tokens, try again later");
+    private final GroupCacheSnapshot snapshot;
 
-    public SimvaKeycloakCheck() {
+    /**
+     * Node-wide, thread-safe service shared by every authenticator instance.
+     * Construction performs no I/O: the Simva admin token is obtained lazily on first use.
+     * @param httpClient pooled outbound HTTP client owned by the provider factory
+     */
+    public SimvaKeycloakCheck(OutboundHttpClient httpClient) {
+        this.simvaClient = new SimvaApiClient(httpClient);
+        this.keycloakConfig = new KeycloakConfig();
+        this.keycloakClient = new KeycloakOAuth2Client(httpClient, this.keycloakConfig);
+        this.logoutQueue = this.keycloakConfig.isLogoutAsync() && !this.keycloakConfig.isLocalCredentialValidation()
+            ? new LogoutQueue(this.keycloakClient, this.keycloakConfig, Metrics.globalRegistry)
+            : null;
+        this.localVerifier = new LocalCredentialVerifier(ParticipantTokenHasher.fromConfig(this.keycloakConfig));
+        this.simvaConfig = new SimvaApiConfig();
+        this.groupCache = new StudyGroupCache(
+            this.simvaClient::getStudyGroups, this.simvaConfig);
+        this.participantIndex = new StudyParticipantIndex();
+        this.candidateValidator = new ParallelCandidateValidator(this.keycloakConfig);
+        this.groupCache.setEvictionListener(this.participantIndex::invalidate);
+        this.metrics = new AuthMetrics(Metrics.globalRegistry);
+        this.warmup = new SimvaWarmup(this.simvaConfig.getWarmupMaxAttempts(), this.simvaConfig.getWarmupRetryDelay());
+        this.warmupGauge = Gauge.builder("simva.warmup.ready", this.warmup, w -> w.isReady() ? 1 : 0)
+            .description("Whether the background warm-up of the Simva service has finished")
+            .register(Metrics.globalRegistry);
+        this.admission = new AdmissionController(new AdmissionConfig(), Metrics.globalRegistry);
+        this.tokenFlights = this.keycloakConfig.isTokenDedup()
+            ? new SingleFlight<>((int) this.keycloakConfig.getTokenDedupStripes())
+            : null;
+        this.throttle = new TokenThrottle(new TokenThrottleConfig(), Metrics.globalRegistry);
+        SignedTokenConfig signedTokenConfig = new SignedTokenConfig();
+        this.signedTokens = signedTokenConfig.isSignedTokens()
+            ? new SignedTokenVerifier(signedTokenConfig, httpClient)
+            : null;
+        CacheSnapshotConfig snapshotConfig = new CacheSnapshotConfig(this.simvaConfig.getGroupsCacheTtl());
+        this.snapshot = snapshotConfig.isSnapshot() && this.groupCache.isEnabled()
+            ? new GroupCacheSnapshot(snapshotConfig, this.groupCache)
+            : null;
+    }
+
+    /**
+     * Restores the study groups and participant index saved by a previous run
+     * (SIMVA_CACHE_SNAPSHOT_FILE) and schedules the next snapshots. Call before startWarmup().
+     */
+    public void restoreSnapshot() {
+        if (snapshot != null) {
+            snapshot.restore(participantIndex::sync);
+            snapshot.start();
+        }
+    }
+
+    /**
+     * Starts the background warm-up and returns immediately: admin login, connections to the
+     * realm token endpoint (remote validation only) and the groups of SIMVA_WARMUP_STUDIES.
+     * With SIMVA_WARMUP=false the service is reported ready at once and warms on first use.
+     * The signing keys of Simva-signed tokens, when enabled, are loaded here too.
+     */
+    public void startWarmup() {
+        if (signedTokens != null) {
+            signedTokens.start();
+        }
+        if (simvaConfig.isWarmup()) {
+            if (signedTokens != null) {
+                warmup.step("signing-keys", signedTokens::reloadKeys);
+            }
+            warmup.step("simva-login", simvaClient::authenticate);
+            if (!keycloakConfig.isLocalCredentialValidation()) {
+                warmup.step("token-endpoint", () -> keycloakClient.primeConnections((int) simvaConfig.getWarmupConnections()));
+            }
+            for (String study : simvaConfig.getWarmupStudies()) {
+                warmup.step("study " + study, () -> participantIndex.sync(study, groupCache.get(study)));
+            }
+        }
+        warmup.start();
+    }
+
+    // Whether the token is Simva-signed and will be verified offline
+    public boolean isSignedToken(String token) {
+        return signedTokens != null && SignedTokenVerifier.looksSigned(token);
+    }
+
+    /**
+     * Shares the study groups with the other nodes of the cluster. Call before startWarmup().
+     */
+    public void setSharedGroupStore(SharedGroupStore store) {
+        this.groupCache.setSharedStore(store);
+    }
+
+    // Seconds a study's groups are cached, locally and in a shared store
+    public long getGroupsCacheTtl() {
+        return this.simvaConfig.getGroupsCacheTtl();
+    }
+
+    // Warm-up state, for readiness reporting
+    public SimvaWarmup getWarmup() {
+        return this.warmup;
+    }
+
+    // Per-stage metrics; authenticators record their own stages in the same scopes
+    public AuthMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public void close() {
+        logger.info("Downstream guards: " + simvaClient.getGuard().stats() + "; " + keycloakClient.getGuard().stats());
+        logger.info("Simva GETs: " + simvaClient.getGetExecutor().stats());
+        if (this.admission.isEnabled()) {
+            logger.info("Token validation " + this.admission.stats());
+        }
+        if (this.tokenFlights != null) {
+            logger.info("Token validations deduplicated: " + this.tokenFlights.stats());
+        }
+        this.admission.close();
+        logger.info("Token throttle: " + this.throttle.stats());
+        this.throttle.close();
+        if (this.signedTokens != null) {
+            logger.info("Signed tokens: " + this.signedTokens.stats());
+            this.signedTokens.close();
+        }
+        this.warmup.close();
+        Metrics.globalRegistry.remove(this.warmupGauge);
+        if (this.snapshot != null) {
+            this.snapshot.close();
+        }
+        this.groupCache.close();
+        this.candidateValidator.close();
+        if (this.logoutQueue != null) {
+            this.logoutQueue.close();
+        }
+        this.metrics.close();
+    }
+
+    /**
+     * Validates a username/password pair, with a password grant against the token endpoint (the
+     * default) or, when KEYCLOAK_CREDENTIAL_VALIDATION=local, in-process through the realm's
+     * credential manager.
+     * In-process, participant tokens are checked against their fast-hash credential first.
+     */
+    private boolean validateCredentials(KeycloakSession session, RealmModel realm, String username, String password, boolean participantToken, AuthMetrics.Scope metrics) throws IOException {
+        KeycloakOAuth2Client.Grant grant = null;
+        boolean valid;
+        AuthMetrics.Outcome outcome = AuthMetrics.Outcome.ERROR;
+        long start = metrics.start(AuthMetrics.Stage.CREDENTIALS);
+        try {
+            if(keycloakConfig.isLocalCredentialValidation()) {
+                valid = participantToken
+                    ? localVerifier.validateParticipantToken(session, realm, username, password)
+                    : localVerifier.validateUserCredentials(session, realm, username, password);
+            } else {
+                grant = keycloakClient.validateUserCredentials(username, password);
+                valid = grant.isValid();
+            }
+            outcome = valid ? AuthMetrics.Outcome.SUCCESS : AuthMetrics.Outcome.INVALID;
+        } finally {
+            metrics.stop(AuthMetrics.Stage.CREDENTIALS, outcome, start);
+        }
+        if(valid && grant != null) {
+            logout(grant, metrics);
+        }
+        return valid;
+    }
+
+    // In-process check of a participant token, whatever KEYCLOAK_CREDENTIAL_VALIDATION says: no token
+    // is issued, and the brute force protector is not told of the outcome
+    private boolean checkLocally(KeycloakSession session, RealmModel realm, String username, String token, AuthMetrics.Scope metrics) {
+        AuthMetrics.Outcome outcome = AuthMetrics.Outcome.ERROR;
+        long start = metrics.start(AuthMetrics.Stage.CREDENTIALS);
         try {
-            simvaClient.authenticate();
-        } catch(IOException e) {
-            logger.info(e.toString());
+            boolean valid = localVerifier.checkParticipantToken(session, realm, username, token);
+            outcome = valid ? AuthMetrics.Outcome.SUCCESS : AuthMetrics.Outcome.INVALID;
+            return valid;
+        } finally {
+            metrics.stop(AuthMetrics.Stage.CREDENTIALS, outcome, start);
         }
     }
 
-    public Boolean checkUsernamePassword(String username, String password) throws IOException {
-        if(keycloakClient.validateUserCredentials(username, password)) {
-            logger.info("Validated user credentials");
-            keycloakClient.disconnect();
+    // The session was only needed to prove the credentials: end it off the login's critical path
+    private void logout(KeycloakOAuth2Client.Grant grant, AuthMetrics.Scope metrics) throws IOException {
+        AuthMetrics.Outcome outcome = AuthMetrics.Outcome.ERROR;
+        long start = metrics.start(AuthMetrics.Stage.LOGOUT);
+        try {
+            boolean done = logoutQueue != null ? logoutQueue.submit(grant) : keycloakClient.disconnect(grant);
+            outcome = done ? AuthMetrics.Outcome.SUCCESS : AuthMetrics.Outcome.INVALID;
+        } finally {
+            metrics.stop(AuthMetrics.Stage.LOGOUT, outcome, start);
+        }
+    }
+
+    private List<SimvaGroup> loadGroups(String study, long reloadMinAge, AuthMetrics.Scope metrics) throws IOException {
+        AuthMetrics.Outcome outcome = AuthMetrics.Outcome.ERROR;
+        long start = metrics.start(AuthMetrics.Stage.GROUPS);
+        try {
+            List<SimvaGroup> groups = reloadMinAge < 0 ? groupCache.get(study) : groupCache.reloadIfOlderThan(study, reloadMinAge);
+            outcome = AuthMetrics.Outcome.SUCCESS;
+            return groups;
+        } finally {
+            metrics.stop(AuthMetrics.Stage.GROUPS, outcome, start);
+        }
+    }
+
+    public Boolean checkUsernamePassword(KeycloakSession session, RealmModel realm, String username, String password, AuthMetrics.Scope metrics) throws IOException {
+        if(validateCredentials(session, realm, username, password, false, metrics)) {
+            logger.debug("Validated user credentials");
             return true;
         } else {
-            logger.info("Invalidated user credentials");
+            logger.debug("Invalidated user credentials");
             return false;
         }
     }
 
-    public SimpleEntry<Boolean, String> checkTokenInStudy(String study, String token) throws IOException {
-        if(keycloakClient.validateUserCredentials(token, token)) {
-            logger.info("Validated token");
-            keycloakClient.disconnect();
+    /**
+     * Validates a participant token of a study. Runs under the node-wide admission control, so a
+     * classroom burst queues here, fairly across studies, instead of piling up on Simva and the
+     * token endpoint; a token still queued after ADMISSION_MAX_WAIT fails with an IOException.
+     * Concurrent checks of the same study and token (double submits, retries, both flows at once)
+     * share the result of the first one instead of repeating its calls. Tokens just rejected are
+     * rejected from memory, and unknown tokens from addresses or for studies with too many
+     * rejections fail with a {@link TokenThrottledException} (see {@link TokenThrottle}).
+     * With SIMVA_SIGNED_TOKENS, Simva-signed tokens are verified locally and never reach the network.
+     */
+    public SimpleEntry<Boolean, String> checkTokenInStudy(KeycloakSession session, RealmModel realm, String study, String token, AuthMetrics.Scope metrics) throws IOException {
+        if (isSignedToken(token)) {
+            return checkSignedToken(session, realm, study, token, metrics);
+        }
+        if (token == null) {
+            return checkAdmittedTokenInStudy(session, realm, study, token, metrics);
+        }
+        String key = tokenKey(realm, study, token);
+        String address = clientAddress(session);
+        boolean known = study != null && participantIndex.groupOf(study, token) != null;
+        TokenThrottle.Reason refused = throttle.refuse(key, study, address, known);
+        if (refused != null) {
+            logger.debugf("Token check refused without outbound calls: %s", refused);
+            if (!refused.rejectsToken()) {
+                throw throttled;
+            }
+            return new SimpleEntry<>(false, null);
+        }
+        return tokenFlights != null
+            ? tokenFlights.run(key, () -> checkAndRecordTokenInStudy(session, realm, study, token, key, address, metrics))
+            : checkAndRecordTokenInStudy(session, realm, study, token, key, address, metrics);
+    }
+
+    // Runs once per flight: a wrong token shared by concurrent duplicates is charged to the throttle once
+    private SimpleEntry<Boolean, String> checkAndRecordTokenInStudy(KeycloakSession session, RealmModel realm, String study, String token,
+                                                                    String key, String address, AuthMetrics.Scope metrics) throws IOException {
+        SimpleEntry<Boolean, String> result = checkAdmittedTokenInStudy(session, realm, study, token, metrics);
+        if (!result.getKey()) {
+            throttle.rejected(key, study, address);
+        }
+        return result;
+    }
+
+    /**
+     * Checks a batch of participant tokens of one study for Simva's admin tools. The batch holds
+     * a single admission slot, the study's groups are loaded once for it (and reloaded at most
+     * once, for tokens missing from the index), and every credential is verified in-process, so
+     * no token is ever issued. A token that resolves to no group is finally tried as a plain
+     * username. Wrong tokens are not throttled, nor counted by the brute force protector: the
+     * caller is an authenticated administrator, and its checks must not lock out the accounts
+     * whose usernames happen to be in the batch.
+     * @param study study id, or null to check the tokens as plain usernames only
+     * @return the username each token logs in as, or null if it is invalid, in the order of the tokens
+     * @throws IOException if the study's groups cannot be loaded or the batch waits too long for admission
+     */
+    public String[] checkTokensInStudy(KeycloakSession session, RealmModel realm, String study, List<String> tokens, AuthMetrics.Scope metrics) throws IOException {
+        String[] usernames = new String[tokens.size()];
+        admission.acquire(study, groupCache.contains(study));
+        try {
+            List<SimvaGroup> groups = null;
+            boolean reloaded = false;
+            for (int i = 0; i < usernames.length; i++) {
+                String token = tokens.get(i);
+                if (token == null || token.isEmpty()) {
+                    continue;
+                }
+                if (isSignedToken(token)) {
+                    SimpleEntry<Boolean, String> result = checkSignedToken(session, realm, study, token, metrics);
+                    usernames[i] = result.getKey() ? result.getValue() : null;
+                    continue;
+                }
+                if (study != null) {
+                    if (groups == null) {
+                        groups = loadGroups(study, -1, metrics);
+                        participantIndex.sync(study, groups);
+                    }
+                    if (participantIndex.hasParticipants(study)) {
+                        String groupId = participantIndex.groupOf(study, token);
+                        if (groupId == null && !reloaded) {
+                            // Participants may have joined after the groups were cached
+                            reloaded = true;
+                            groups = loadGroups(study, simvaConfig.getGroupsReloadMinAge(), metrics);
+                            participantIndex.sync(study, groups);
+                            groupId = participantIndex.groupOf(study, token);
+                        }
+                        if (groupId != null && checkLocally(session, realm, groupId + "_" + token, token, metrics)) {
+                            usernames[i] = groupId + "_" + token;
+                            continue;
+                        }
+                    } else {
+                        for (SimvaGroup group : groups) {
+                            if (checkLocally(session, realm, group.getId() + "_" + token, token, metrics)) {
+                                usernames[i] = group.getId() + "_" + token;
+                                break;
+                            }
+                        }
+                        if (usernames[i] != null) {
+                            continue;
+                        }
+                    }
+                }
+                if (checkLocally(session, realm, token, token, metrics)) {
+                    usernames[i] = token;
+                }
+            }
+        } finally {
+            admission.release();
+        }
+        return usernames;
+    }
+
+    private static String clientAddress(KeycloakSession session) {
+        KeycloakContext context = session != null ? session.getContext() : null;
+        ClientConnection connection = context != null ? context.getConnection() : null;
+        return connection != null ? connection.getRemoteAddr() : null;
+    }
+
+    /**
+     * Verifies a Simva-signed token against the cached key set; the participant it names must
+     * be an enabled user of the realm.
+     */
+    private SimpleEntry<Boolean, String> checkSignedToken(KeycloakSession session, RealmModel realm, String study, String token, AuthMetrics.Scope metrics) {
+        AuthMetrics.Outcome outcome = AuthMetrics.Outcome.INVALID;
+        long start = metrics.start(AuthMetrics.Stage.SIGNED_TOKEN);
+        try {
+            SignedTokenVerifier.SignedParticipant participant = signedTokens.verify(token, study);
+            if (participant == null) {
+                return new SimpleEntry<>(false, null);
+            }
+            UserModel user = session.users().getUserByUsername(realm, participant.getUsername());
+            if (user == null || !user.isEnabled()) {
+                logger.debugf("Signed token of an unknown or disabled participant in group %s", participant.getGroup());
+                return new SimpleEntry<>(false, null);
+            }
+            if (LocalCredentialVerifier.isLockedOut(session, realm, user)) {
+                logger.infof("Signed token of participant %s locked by brute force protection", user.getId());
+                return new SimpleEntry<>(false, null);
+            }
+            outcome = AuthMetrics.Outcome.SUCCESS;
+            return new SimpleEntry<>(true, participant.getUsername());
+        } finally {
+            metrics.stop(AuthMetrics.Stage.SIGNED_TOKEN, outcome, start);
+        }
+    }
+
+    // Realm, study and a digest of the token: in-flight and rejected checks are never kept in clear
+    private static String tokenKey(RealmModel realm, String study, String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return (realm != null ? realm.getId() : "") + '/' + (study != null ? study : "") + '/' + Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private SimpleEntry<Boolean, String> checkAdmittedTokenInStudy(KeycloakSession session, RealmModel realm, String study, String token, AuthMetrics.Scope metrics) throws IOException {
+        admission.acquire(study, groupCache.contains(study));
+        try {
+            return checkAdmittedToken(session, realm, study, token, metrics);
+        } finally {
+            admission.release();
+        }
+    }
+
+    private SimpleEntry<Boolean, String> checkAdmittedToken(KeycloakSession session, RealmModel realm, String study, String token, AuthMetrics.Scope metrics) throws IOException {
+        if(validateCredentials(session, realm, token, token, true, metrics)) {
+            logger.debug("Validated token");
             return new SimpleEntry<>(true, token);
         } else {
-            logger.info("Invalidated token");
+            logger.debug("Invalidated token");
             if(study == null) {
                 return new SimpleEntry<>(false, null);
             } else {
-                Map<String, Object> groups = simvaClient.sendGetRequest("/studies/" + study + "/groups");
-                for(Object groupObj : groups.values()) {
-                    // Check if groupObj is indeed a Map
-                    if (groupObj instanceof Map) {
-                        Map<String, Object> group = (Map<String, Object>) groupObj;
-                        logger.info("Group : " + group.get("_id"));
-                        logger.info("Participants : " + group.get("participants"));
-                        try {
-                            // Create a new username based on your logic
-                            String updatedUsername = group.get("_id") + "_" + token;
-                            if(keycloakClient.validateUserCredentials(updatedUsername, token)) {
-                                logger.info("Validated token for : " + updatedUsername);
-                                keycloakClient.disconnect();
-                                return new SimpleEntry<>(true, updatedUsername);
-                            }
-                        } catch(IOException e){
-                            logger.info(e.toString());
-                        }
-                    } else {
-                        logger.warn("Unexpected group type: " + groupObj.getClass().getName());
-                    }
+                List<SimvaGroup> groups = loadGroups(study, -1, metrics);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Groups cache: " + groupCache.stats());
                 }
-                return new SimpleEntry<>(false, null);
+                participantIndex.sync(study, groups);
+                if(participantIndex.hasParticipants(study)) {
+                    return checkTokenInIndex(session, realm, study, token, metrics);
+                }
+                return checkTokenInGroups(session, realm, groups, token, metrics);
+            }
+        }
+    }
+
+    /**
+     * Resolves the group of a participant token through the study index and validates
+     * the single matching "<group>_<token>" username.
+     */
+    private SimpleEntry<Boolean, String> checkTokenInIndex(KeycloakSession session, RealmModel realm, String study, String token, AuthMetrics.Scope metrics) throws IOException {
+        String groupId = participantIndex.groupOf(study, token);
+        if(groupId == null) {
+            // The participant may have joined after the groups were cached
+            List<SimvaGroup> groups = loadGroups(study, simvaConfig.getGroupsReloadMinAge(), metrics);
+            participantIndex.sync(study, groups);
+            groupId = participantIndex.groupOf(study, token);
+        }
+        if(groupId == null) {
+            logger.debugf("Token not found in study %s", study);
+            return new SimpleEntry<>(false, null);
+        }
+        String updatedUsername = groupId + "_" + token;
+        if(validateCredentials(session, realm, updatedUsername, token, true, metrics)) {
+            logger.debugf("Validated token in group %s", groupId);
+            return new SimpleEntry<>(true, updatedUsername);
+        }
+        return new SimpleEntry<>(false, null);
+    }
+
+    /**
+     * Fallback for group payloads without participant lists: tries the token against every group.
+     * Remote checks run concurrently when KEYCLOAK_CREDENTIAL_FANOUT > 1; local checks stay on the
+     * calling thread because the KeycloakSession cannot be shared between threads.
+     */
+    private SimpleEntry<Boolean, String> checkTokenInGroups(KeycloakSession session, RealmModel realm, List<SimvaGroup> groups, String token, AuthMetrics.Scope metrics) throws IOException {
+        if(candidateValidator.isParallel() && !keycloakConfig.isLocalCredentialValidation()) {
+            List<String> candidates = new ArrayList<>(groups.size());
+            for(SimvaGroup group : groups) {
+                candidates.add(group.getId() + "_" + token);
+            }
+            String updatedUsername = candidateValidator.firstValid(candidates,
+                candidate -> validateCredentials(session, realm, candidate, token, true, metrics));
+            if(updatedUsername != null) {
+                logger.debug("Validated token in one of the study groups");
+                return new SimpleEntry<>(true, updatedUsername);
+            }
+            return new SimpleEntry<>(false, null);
+        }
+        for(SimvaGroup group : groups) {
+            logger.debugf("Group : %s", group.getId());
+            try {
+                // Create a new username based on your logic
+                String updatedUsername = group.getId() + "_" + token;
+                if(validateCredentials(session, realm, updatedUsername, token, true, metrics)) {
+                    logger.debugf("Validated token in group %s", group.getId());
+                    return new SimpleEntry<>(true, updatedUsername);
+                }
+            } catch(IOException e){
+                logger.info(e.toString());
             }
         }
+        return new SimpleEntry<>(false, null);
     }
 }
@@ -0,0 +1,35 @@
+package es.eucm.utils;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simva study, as returned by /studies/{id}. Groups are referenced by id.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SimvaStudy {
+
+    @JsonProperty("_id")
+    private String id;
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("groups")
+    private List<String> groups;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getGroups() {
+        return groups != null ? groups : Collections.emptyList();
+    }
+}
@@ -0,0 +1,163 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the Simva admin bearer token. The token is obtained lazily, refreshed shortly before
+ * the expiry carried in its JWT "exp" claim and dropped when Simva answers 401.
+ * Concurrent callers share a single in-flight login.
+ */
+public class SimvaTokenManager {
+    private static final Logger logger = Logger.getLogger(SimvaTokenManager.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @FunctionalInterface
+    public interface Login {
+        // Returns the raw token issued by /users/login
+        String login() throws IOException;
+    }
+
+    private static final class Token {
+        final String bearer;
+        final long refreshAt;
+        final long expiresAt;
+
+        Token(String bearer, long refreshAt, long expiresAt) {
+            this.bearer = bearer;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Login login;
+    private final long refreshSkewMillis;
+    private final long defaultTtlMillis;
+    private final AtomicReference<Token> token = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Token>> inFlight = new AtomicReference<>();
+
+    public SimvaTokenManager(Login login, long refreshSkewSeconds, long defaultTtlSeconds) {
+        this.login = login;
+        this.refreshSkewMillis = TimeUnit.SECONDS.toMillis(Math.max(0, refreshSkewSeconds));
+        this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(Math.max(1, defaultTtlSeconds));
+    }
+
+    public SimvaTokenManager(Login login, SimvaApiConfig config) {
+        this(login, config.getTokenRefreshSkew(), config.getTokenDefaultTtl());
+    }
+
+    public boolean hasToken() {
+        Token current = token.get();
+        return current != null && System.currentTimeMillis() < current.expiresAt;
+    }
+
+    /**
+     * Returns a valid "Bearer ..." header value, logging in if there is no usable token.
+     * Inside the refresh window the current token keeps being served while one caller refreshes it.
+     * @throws IOException if a login is needed and fails
+     */
+    public String getBearerToken() throws IOException {
+        Token current = token.get();
+        long now = System.currentTimeMillis();
+        if (current != null && now < current.refreshAt) {
+            return current.bearer;
+        }
+        if (current != null && now < current.expiresAt) {
+            if (inFlight.get() != null) {
+                return current.bearer;
+            }
+            try {
+                return refresh().bearer;
+            } catch (IOException e) {
+                logger.info("Simva token refresh failed, keeping current token: " + e);
+                return current.bearer;
+            }
+        }
+        return refresh().bearer;
+    }
+
+    /**
+     * Drops the given token if it is still the current one, so the next call logs in again.
+     */
+    public void invalidate(String bearer) {
+        Token current = token.get();
+        if (current != null && current.bearer.equals(bearer)) {
+            token.compareAndSet(current, null);
+        }
+    }
+
+    /**
+     * Forces a new login, joining one already in flight.
+     */
+    public String refreshNow() throws IOException {
+        return refresh().bearer;
+    }
+
+    private Token refresh() throws IOException {
+        CompletableFuture<Token> mine = new CompletableFuture<>();
+        CompletableFuture<Token> running = inFlight.compareAndExchange(null, mine);
+        if (running == null) {
+            try {
+                Token fresh = parse(login.login());
+                token.set(fresh);
+                mine.complete(fresh);
+                return fresh;
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.set(null);
+            }
+        }
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Simva login failed", e.getCause());
+        }
+    }
+
+    private Token parse(String raw) throws IOException {
+        if (raw == null || raw.isEmpty()) {
+            throw new IOException("Simva login returned no token");
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + defaultTtlMillis;
+        Long exp = readExpiry(raw);
+        if (exp != null) {
+            expiresAt = TimeUnit.SECONDS.toMillis(exp);
+        }
+        long refreshAt = Math.max(now, expiresAt - refreshSkewMillis);
+        logger.debug("Simva token valid for " + (expiresAt - now) + " ms");
+        return new Token("Bearer " + raw, refreshAt, expiresAt);
+    }
+
+    // Reads the "exp" claim of a JWT without verifying it; null if the token is not a JWT
+    static Long readExpiry(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+            JsonNode claims = objectMapper.readTree(new String(payload, StandardCharsets.UTF_8));
+            JsonNode exp = claims.get("exp");
+            return exp != null && exp.canConvertToLong() ? exp.asLong() : null;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Unable to read Simva token expiry: " + e);
+            return null;
+        }
+    }
+}
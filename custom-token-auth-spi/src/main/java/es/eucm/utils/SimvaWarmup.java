@@ -0,0 +1,139 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background warm-up of the node-wide Simva service, so that Keycloak startup never waits for
+ * Simva and the first logins after a restart do not pay for the admin login, the first
+ * connections and the first group loads. Each step is retried after a delay until it succeeds
+ * or runs out of attempts. The node reports itself ready once every step is done or has been
+ * given up on: an unreachable Simva must not keep it out of the load balancer forever, logins
+ * then warm the service lazily as before.
+ */
+public class SimvaWarmup {
+    private static final Logger logger = Logger.getLogger(SimvaWarmup.class);
+
+    public enum State {
+        // Not started, or disabled
+        PENDING,
+        // Steps still running or waiting for a retry
+        WARMING,
+        // Every step succeeded
+        READY,
+        // Some step ran out of attempts; the service warms lazily
+        DEGRADED
+    }
+
+    @FunctionalInterface
+    public interface Step {
+        void run() throws IOException;
+    }
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    private final long maxAttempts;
+    private final long retryDelayMillis;
+    private final ScheduledExecutorService executor;
+    private volatile State state = State.PENDING;
+    private volatile long startedAt;
+    private volatile long duration = -1;
+
+    public SimvaWarmup(long maxAttempts, long retryDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = Math.max(0, retryDelayMillis);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simva-warmup");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Steps run in the order they were added, before start()
+    public SimvaWarmup step(String name, Step step) {
+        this.steps.put(name, step);
+        return this;
+    }
+
+    /**
+     * Starts the steps on the warm-up thread and returns immediately.
+     */
+    public synchronized void start() {
+        if (this.state != State.PENDING) {
+            return;
+        }
+        this.state = State.WARMING;
+        this.startedAt = System.nanoTime();
+        if (this.steps.isEmpty()) {
+            finish(State.READY);
+            return;
+        }
+        List<String> pending = new ArrayList<>(this.steps.keySet());
+        submit(() -> run(pending, 1), 0);
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    // Whether the node may take logins: warm-up finished, successfully or not
+    public boolean isReady() {
+        State current = this.state;
+        return current == State.READY || current == State.DEGRADED;
+    }
+
+    // Milliseconds the warm-up took, or -1 while it has not finished
+    public long getDuration() {
+        return this.duration;
+    }
+
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    private void run(List<String> pending, int attempt) {
+        List<String> failed = new ArrayList<>();
+        for (String name : pending) {
+            try {
+                this.steps.get(name).run();
+                logger.debugf("Simva warm-up step %s done", name);
+            } catch (IOException | RuntimeException e) {
+                logger.infof("Simva warm-up step %s failed (attempt %d of %d): %s", name, attempt, this.maxAttempts, e);
+                failed.add(name);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+        if (failed.isEmpty()) {
+            finish(State.READY);
+        } else if (attempt >= this.maxAttempts) {
+            logger.warnf("Simva warm-up gave up on %s, the service will warm on first use", failed);
+            finish(State.DEGRADED);
+        } else {
+            submit(() -> run(failed, attempt + 1), this.retryDelayMillis);
+        }
+    }
+
+    private void finish(State result) {
+        this.duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startedAt);
+        this.state = result;
+        logger.infof("Simva warm-up finished in %d ms: %s", this.duration, result);
+    }
+
+    private void submit(Runnable task, long delayMillis) {
+        try {
+            this.executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed while warming up
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package es.eucm.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller runs the call and the callers
+ * arriving while it runs wait for it and share its result or exception. Nothing is cached, a key
+ * is forgotten as soon as its call returns. Keys are spread over independently locked stripes,
+ * so unrelated calls never contend on a single lock.
+ */
+public class SingleFlight<K, V> {
+
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+
+    private final Map<K, CompletableFuture<V>>[] stripes;
+    private final int mask;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public SingleFlight(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Map[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new HashMap<>();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs the call, or joins the call already running for the same key.
+     */
+    public V run(K key, Call<V> call) throws IOException {
+        calls.increment();
+        int h = key.hashCode();
+        Map<K, CompletableFuture<V>> flights = stripes[(h ^ (h >>> 16)) & mask];
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running;
+        synchronized (flights) {
+            running = flights.putIfAbsent(key, mine);
+        }
+        if (running == null) {
+            try {
+                V value = call.call();
+                mine.complete(value);
+                return value;
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                if (!mine.isDone()) {
+                    // An Error: do not leave the callers that joined waiting forever
+                    mine.completeExceptionally(new IOException("Shared call failed"));
+                }
+                synchronized (flights) {
+                    flights.remove(key, mine);
+                }
+            }
+        }
+        shared.increment();
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Shared call failed", e.getCause());
+        }
+    }
+
+    // Calls made, including the ones that joined another
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    // Calls that joined one already running instead of running their own
+    public long getShared() {
+        return shared.sum();
+    }
+
+    public String stats() {
+        return "calls=" + getCalls() + ", shared=" + getShared();
+    }
+}
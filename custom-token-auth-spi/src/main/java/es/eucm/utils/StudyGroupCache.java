@@ -0,0 +1,378 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, study-keyed cache of the group lists returned by /studies/{id}/groups.
+ * Entries live for a fixed TTL; a background refresh is started once an entry enters its
+ * refresh-ahead window, so hot studies never expire under load. Concurrent misses for the
+ * same study share a single load. When the cache is full the least recently used study is evicted.
+ * Reloads of a cached study are conditional: a "not modified" answer renews the entry
+ * with the same group list instance.
+ * With a {@link SharedGroupStore}, this cache is the near cache of a cluster-wide one: a load
+ * first adopts a copy another node loaded recently enough, every load from Simva is published
+ * for the other nodes, and a study stored by another node is dropped here so its next lookup
+ * picks the new copy up.
+ */
+public class StudyGroupCache {
+    private static final Logger logger = Logger.getLogger(StudyGroupCache.class);
+
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @param validators validators of the cached copy, or null for an unconditional load
+         */
+        ConditionalResponse<List<SimvaGroup>> load(String study, CacheValidators validators) throws IOException;
+    }
+
+    private static final class Entry {
+        final List<SimvaGroup> groups;
+        final CacheValidators validators;
+        final long loadedAt;
+        final long expiresAt;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+        volatile long lastAccess;
+
+        Entry(List<SimvaGroup> groups, CacheValidators validators, long now, long ttlNanos, long refreshAheadNanos) {
+            this.groups = groups;
+            this.validators = validators;
+            this.loadedAt = now;
+            this.expiresAt = now + ttlNanos;
+            this.refreshAt = this.expiresAt - refreshAheadNanos;
+            this.lastAccess = now;
+        }
+    }
+
+    private final Loader loader;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+    private final long maxSize;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService refresher;
+    private volatile Consumer<String> evictionListener = study -> { };
+    private volatile SharedGroupStore sharedStore;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder sharedChanges = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+
+    public StudyGroupCache(Loader loader, long ttlSeconds, long refreshAheadSeconds, long maxSize) {
+        this.loader = loader;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+        this.refreshAheadNanos = Math.min(this.ttlNanos, TimeUnit.SECONDS.toNanos(Math.max(0, refreshAheadSeconds)));
+        this.maxSize = Math.max(1, maxSize);
+        this.refresher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "simva-groups-cache-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public StudyGroupCache(Loader loader, SimvaApiConfig config) {
+        this(loader, config.getGroupsCacheTtl(), config.getGroupsCacheRefreshAhead(), config.getGroupsCacheMaxSize());
+    }
+
+    // Notified with the study id whenever an entry is evicted for size
+    public void setEvictionListener(Consumer<String> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Shares the cached studies with the other nodes through the given store.
+     */
+    public void setSharedStore(SharedGroupStore store) {
+        store.setChangeListener(study -> {
+            if (entries.remove(study) != null) {
+                sharedChanges.increment();
+            }
+        });
+        this.sharedStore = store;
+    }
+
+    public boolean isEnabled() {
+        return this.ttlNanos > 0;
+    }
+
+    /**
+     * Returns the group list of a study, loading it from Simva on a miss or after expiry.
+     * @param study study id
+     * @return groups as returned by the loader
+     * @throws IOException if the study is not cached and the load fails
+     */
+    public List<SimvaGroup> get(String study) throws IOException {
+        if (!isEnabled()) {
+            misses.increment();
+            return loader.load(study, null).getBody();
+        }
+        long now = System.nanoTime();
+        Entry entry = entries.get(study);
+        if (entry != null && now - entry.expiresAt < 0) {
+            hits.increment();
+            entry.lastAccess = now;
+            if (now - entry.refreshAt >= 0 && entry.refreshing.compareAndSet(false, true)) {
+                scheduleRefresh(study);
+            }
+            return entry.groups;
+        }
+        misses.increment();
+        return loadShared(study, ttlNanos - refreshAheadNanos).groups;
+    }
+
+    /**
+     * Reloads the group list of a study unless the cached copy is younger than the given age,
+     * so that lookups missing freshly added participants can catch up without hammering Simva.
+     */
+    public List<SimvaGroup> reloadIfOlderThan(String study, long seconds) throws IOException {
+        Entry entry = entries.get(study);
+        if (entry != null && System.nanoTime() - entry.loadedAt < TimeUnit.SECONDS.toNanos(seconds)) {
+            hits.increment();
+            return entry.groups;
+        }
+        misses.increment();
+        return loadShared(study, Math.min(ttlNanos - refreshAheadNanos, TimeUnit.SECONDS.toNanos(seconds))).groups;
+    }
+
+    // Whether the study's groups are cached, i.e. the study is known to exist
+    public boolean contains(String study) {
+        return study != null && entries.containsKey(study);
+    }
+
+    public void invalidate(String study) {
+        entries.remove(study);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    // Concurrent loads of a study share one; a shared copy younger than maxSharedAge is adopted
+    private Entry loadShared(String study, long maxSharedAge) throws IOException {
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> inFlight = loading.putIfAbsent(study, created);
+        if (inFlight == null) {
+            try {
+                Entry entry = load(study, maxSharedAge);
+                created.complete(entry);
+                return entry;
+            } catch (IOException | RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.remove(study, created);
+            }
+        }
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to load groups of study " + study, e.getCause());
+        }
+    }
+
+    private Entry load(String study, long maxSharedAge) throws IOException {
+        Entry previous = entries.get(study);
+        SharedGroupStore store = sharedStore;
+        SharedGroups shared = store != null ? store.get(study) : null;
+        if (shared != null) {
+            long now = System.nanoTime();
+            long age = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - shared.getLoadedAt()));
+            if (age < maxSharedAge && (previous == null || age < now - previous.loadedAt)) {
+                sharedHits.increment();
+                Entry entry = new Entry(shared.getGroups(), shared.getValidators(), now - age, ttlNanos, refreshAheadNanos);
+                entries.put(study, entry);
+                evictIfNeeded();
+                return entry;
+            }
+        }
+        // Revalidate the newest copy at hand
+        List<SimvaGroup> current = null;
+        CacheValidators validators = null;
+        if (previous != null) {
+            current = previous.groups;
+            validators = previous.validators;
+        } else if (shared != null) {
+            current = shared.getGroups();
+            validators = shared.getValidators();
+        }
+        ConditionalResponse<List<SimvaGroup>> response;
+        try {
+            response = loader.load(study, current != null ? validators : null);
+        } catch (IOException | RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        }
+        List<SimvaGroup> groups;
+        if (response.isNotModified()) {
+            notModified.increment();
+            groups = current;
+        } else {
+            groups = response.getBody();
+        }
+        Entry entry = new Entry(groups, response.getValidators(), System.nanoTime(), ttlNanos, refreshAheadNanos);
+        entries.put(study, entry);
+        evictIfNeeded();
+        if (store != null) {
+            store.put(study, new SharedGroups(groups, response.getValidators(), System.currentTimeMillis(), store.getNodeId()));
+        }
+        return entry;
+    }
+
+    /**
+     * Unexpired cached studies, with the wall-clock time each was loaded, e.g. for a snapshot.
+     */
+    public Map<String, SharedGroups> export() {
+        long now = System.nanoTime();
+        long wallNow = System.currentTimeMillis();
+        Map<String, SharedGroups> studies = new HashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (now - entry.expiresAt < 0) {
+                long loadedAt = wallNow - TimeUnit.NANOSECONDS.toMillis(now - entry.loadedAt);
+                studies.put(e.getKey(), new SharedGroups(entry.groups, entry.validators, loadedAt, null));
+            }
+        }
+        return studies;
+    }
+
+    /**
+     * Caches a study saved by {@link #export()}, unless it is cached already. A copy past its
+     * refresh point is still served, and revalidated in the background on its first lookup.
+     * @return whether the copy was cached
+     */
+    public boolean restore(String study, SharedGroups copy) {
+        if (!isEnabled()) {
+            return false;
+        }
+        long age = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - copy.getLoadedAt()));
+        long loadedAt = System.nanoTime() - Math.min(age, ttlNanos - refreshAheadNanos);
+        if (entries.putIfAbsent(study, new Entry(copy.getGroups(), copy.getValidators(), loadedAt, ttlNanos, refreshAheadNanos)) != null) {
+            return false;
+        }
+        restored.increment();
+        evictIfNeeded();
+        return true;
+    }
+
+    private void scheduleRefresh(String study) {
+        try {
+            refresher.execute(() -> {
+                try {
+                    refreshes.increment();
+                    loadShared(study, ttlNanos - refreshAheadNanos);
+                } catch (IOException | RuntimeException e) {
+                    // Keep serving the current entry until it expires
+                    logger.info("Refresh of study " + study + " groups failed: " + e);
+                    Entry current = entries.get(study);
+                    if (current != null) {
+                        current.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.info("Refresh of study " + study + " groups rejected: " + e);
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (entries.size() > maxSize) {
+            String oldestKey = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                long access = e.getValue().lastAccess;
+                if (oldestKey == null || access - oldestAccess < 0) {
+                    oldestKey = e.getKey();
+                    oldestAccess = access;
+                }
+            }
+            if (oldestKey == null || entries.remove(oldestKey) == null) {
+                return;
+            }
+            evictions.increment();
+            evictionListener.accept(oldestKey);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+    // Loads answered by a copy another node loaded
+    public long getSharedHitCount() {
+        return sharedHits.sum();
+    }
+
+    // Local copies dropped because another node stored a newer one
+    public long getSharedChangeCount() {
+        return sharedChanges.sum();
+    }
+
+    // Studies cached from a snapshot
+    public long getRestoredCount() {
+        return restored.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public String stats() {
+        return "size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+            + ", refreshes=" + getRefreshCount() + ", evictions=" + getEvictionCount()
+            + ", loadFailures=" + getLoadFailureCount() + ", notModified=" + getNotModifiedCount()
+            + ", sharedHits=" + getSharedHitCount() + ", sharedChanges=" + getSharedChangeCount()
+            + ", restored=" + getRestoredCount();
+    }
+
+    public void close() {
+        refresher.shutdownNow();
+        SharedGroupStore store = sharedStore;
+        if (store != null) {
+            store.close();
+        }
+        entries.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-study reverse index from participant token to the id of the group holding it,
+ * built from the "participants" arrays of the /studies/{id}/groups payload.
+ * The index of a study is re-synchronised whenever a new payload instance is seen, applying
+ * only the participants that changed since the previous payload.
+ */
+public class StudyParticipantIndex {
+    private static final Logger logger = Logger.getLogger(StudyParticipantIndex.class);
+
+    private static final class StudyEntry {
+        final ParticipantIndex index;
+        volatile Object source;
+        volatile boolean hasParticipants;
+
+        StudyEntry(int expectedSize) {
+            this.index = new ParticipantIndex(expectedSize);
+        }
+    }
+
+    private final ConcurrentHashMap<String, StudyEntry> studies = new ConcurrentHashMap<>();
+
+    /**
+     * Synchronises the index of a study with a groups payload. Cheap when the payload is the
+     * instance the index was last built from.
+     * @param study study id
+     * @param groups groups of the study, as returned by SimvaApiClient
+     */
+    public void sync(String study, List<SimvaGroup> groups) {
+        StudyEntry entry = studies.get(study);
+        if (entry != null && entry.source == groups) {
+            return;
+        }
+        Map<String, String> participants = new HashMap<>();
+        boolean hasParticipants = collect(groups, participants);
+        if (entry == null) {
+            entry = studies.computeIfAbsent(study, s -> new StudyEntry(participants.size()));
+        }
+        synchronized (entry) {
+            if (entry.source == groups) {
+                return;
+            }
+            int changes = entry.index.update(participants);
+            entry.hasParticipants = hasParticipants;
+            entry.source = groups;
+            logger.debug("Participant index of study " + study + " updated: " + changes + " changes, "
+                + entry.index.size() + " participants");
+        }
+    }
+
+    /**
+     * Returns the group id of a participant token in a study, or null if it is not indexed.
+     */
+    public String groupOf(String study, String token) {
+        StudyEntry entry = studies.get(study);
+        return entry == null ? null : entry.index.groupOf(token);
+    }
+
+    /**
+     * Whether the payload the study was indexed from carried participant lists at all;
+     * when it did not, callers have to resolve the group by other means.
+     */
+    public boolean hasParticipants(String study) {
+        StudyEntry entry = studies.get(study);
+        return entry != null && entry.hasParticipants;
+    }
+
+    public void invalidate(String study) {
+        studies.remove(study);
+    }
+
+    public int size(String study) {
+        StudyEntry entry = studies.get(study);
+        return entry == null ? 0 : entry.index.size();
+    }
+
+    private static boolean collect(List<SimvaGroup> groups, Map<String, String> participants) {
+        boolean hasParticipants = false;
+        for (SimvaGroup group : groups) {
+            if (group.getId() == null || !group.hasParticipants()) {
+                continue;
+            }
+            hasParticipants = true;
+            String groupId = group.getId();
+            for (String participant : group.getParticipants()) {
+                participants.put(participantToken(groupId, participant), groupId);
+            }
+        }
+        return hasParticipants;
+    }
+
+    // Participants are listed either by token or by their "<group>_<token>" username
+    private static String participantToken(String groupId, String username) {
+        String prefix = groupId + "_";
+        return username.startsWith(prefix) ? username.substring(prefix.length()) : username;
+    }
+}
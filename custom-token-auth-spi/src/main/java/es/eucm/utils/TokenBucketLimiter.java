@@ -0,0 +1,147 @@
+package es.eucm.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One token bucket per key (client address, study). Every failure spends a token; a key whose
+ * bucket is empty is refused until tokens are earned back at the configured rate. Buckets that
+ * have refilled carry no information and are dropped when the number of keys reaches its limit;
+ * if every key is still being throttled then, the least recently seen tenth is dropped.
+ */
+public class TokenBucketLimiter {
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt;
+        // Last allows() or charge() of the key, for eviction
+        private long seenAt;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+            this.seenAt = now;
+        }
+
+        // Called holding the bucket's monitor
+        void refill(double capacity, double perNano, long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+    }
+
+    static final int EVICTED_PERCENT = 10;
+    private static final int EVICTION_SAMPLE = 1024;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final double capacity;
+    private final double perNano;
+    private final long maxKeys;
+
+    /**
+     * @param capacity tokens of a full bucket (0 disables the limiter)
+     * @param perMinute tokens earned back per minute
+     * @param maxKeys keys tracked at most
+     */
+    public TokenBucketLimiter(long capacity, long perMinute, long maxKeys) {
+        this.capacity = Math.max(0, capacity);
+        this.perNano = Math.max(0, perMinute) / (double) TimeUnit.MINUTES.toNanos(1);
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    public boolean isEnabled() {
+        return this.capacity > 0;
+    }
+
+    // Whether the key has a token left; spends nothing
+    public boolean allows(String key) {
+        if (!isEnabled()) {
+            return true;
+        }
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            return true;
+        }
+        synchronized (bucket) {
+            long now = System.nanoTime();
+            bucket.refill(capacity, perNano, now);
+            bucket.seenAt = now;
+            return bucket.tokens >= 1;
+        }
+    }
+
+    // Spends one token of the key
+    public void charge(String key) {
+        if (!isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                evictRefilled(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+        }
+        synchronized (bucket) {
+            bucket.refill(capacity, perNano, now);
+            bucket.seenAt = now;
+            bucket.tokens = Math.max(0, bucket.tokens - 1);
+        }
+    }
+
+    private void evictRefilled(long now) {
+        for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext(); ) {
+            Bucket bucket = it.next();
+            synchronized (bucket) {
+                bucket.refill(capacity, perNano, now);
+                if (bucket.tokens >= capacity) {
+                    it.remove();
+                }
+            }
+        }
+        if (buckets.size() >= maxKeys) {
+            // Every key is being throttled: forget the least recently seen ones, never all of them
+            List<Long> seen = new ArrayList<>(EVICTION_SAMPLE);
+            for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext() && seen.size() < EVICTION_SAMPLE; ) {
+                Bucket bucket = it.next();
+                synchronized (bucket) {
+                    seen.add(bucket.seenAt);
+                }
+            }
+            long cutoff = evictionCutoff(seen, now);
+            buckets.values().removeIf(bucket -> {
+                synchronized (bucket) {
+                    return bucket.seenAt - now <= cutoff;
+                }
+            });
+        }
+    }
+
+    /**
+     * Cutoff that evicts about the oldest {@value #EVICTED_PERCENT}% of the entries, estimated
+     * from a sample of their System.nanoTime stamps: one scan then makes room for many new keys.
+     * @return the largest stamp, relative to now, of the entries to evict
+     */
+    static long evictionCutoff(Collection<Long> stamps, long now) {
+        long[] sample = new long[Math.min(stamps.size(), EVICTION_SAMPLE)];
+        int n = 0;
+        for (Iterator<Long> it = stamps.iterator(); it.hasNext() && n < sample.length; ) {
+            sample[n++] = it.next() - now;
+        }
+        if (n == 0) {
+            return Long.MIN_VALUE;
+        }
+        Arrays.sort(sample, 0, n);
+        return sample[Math.max(0, n * EVICTED_PERCENT / 100 - 1)];
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,159 @@
+package es.eucm.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps wrong and guessed participant tokens away from Simva and the token endpoint. A token
+ * rejected for a study is rejected again from memory for TOKEN_NEGATIVE_CACHE_TTL ms, and every
+ * rejection spends a token of the client address's and of the study's bucket. While either is
+ * empty, checks from that address or for that study are shed before any outbound call, except
+ * for tokens the local participant index already knows: guesses cannot lock out the valid
+ * participants of a study, nor a classroom sharing one NAT address. Shed checks are not
+ * rejections: the caller answers "try again later".
+ * The address is the one Keycloak reports for the connection. Behind a reverse proxy, Keycloak
+ * must trust the proxy's forwarded headers (proxy-headers option) or every client shares the
+ * proxy's bucket. Refusals are counted in simva.token.throttled, tagged with their reason.
+ */
+public class TokenThrottle {
+    public static final String REJECTED_COUNTER = "simva.token.throttled";
+
+    public enum Reason {
+        // Token rejected for the same study a moment ago
+        NEGATIVE_CACHE("negative_cache"),
+        // Too many rejected tokens from the client address
+        IP("ip"),
+        // Too many rejected tokens for the study
+        STUDY("study");
+
+        final String tag;
+
+        Reason(String tag) {
+            this.tag = tag;
+        }
+
+        // Whether the token itself is known to be wrong; otherwise the check is only shed
+        public boolean rejectsToken() {
+            return this == NEGATIVE_CACHE;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final List<Meter> meters = new ArrayList<>();
+    private final Counter[] rejections;
+    private final long ttlNanos;
+    private final long maxSize;
+    private final ConcurrentHashMap<String, Long> rejected = new ConcurrentHashMap<>();
+    private final TokenBucketLimiter ipLimiter;
+    private final TokenBucketLimiter studyLimiter;
+
+    public TokenThrottle(TokenThrottleConfig config, MeterRegistry registry) {
+        this.registry = registry;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.getNegativeCacheTtl()));
+        this.maxSize = Math.max(1, config.getNegativeCacheMaxSize());
+        this.ipLimiter = new TokenBucketLimiter(config.getIpBurst(), config.getIpPerMinute(), config.getMaxSources());
+        this.studyLimiter = new TokenBucketLimiter(config.getStudyBurst(), config.getStudyPerMinute(), config.getMaxSources());
+        Reason[] reasons = Reason.values();
+        this.rejections = new Counter[reasons.length];
+        for (Reason reason : reasons) {
+            Counter counter = Counter.builder(REJECTED_COUNTER)
+                .description("Participant token checks refused without an outbound call")
+                .tag("reason", reason.tag)
+                .register(registry);
+            this.rejections[reason.ordinal()] = counter;
+            this.meters.add(counter);
+        }
+    }
+
+    /**
+     * Decides whether a token check may go ahead.
+     * @param key realm, study and token digest of the check
+     * @param study study of the check, or null
+     * @param address client address, or null if unknown
+     * @param known whether the local participant index holds the token: it then bypasses the buckets
+     * @return the reason the check is refused, or null if it may go ahead
+     */
+    public Reason refuse(String key, String study, String address, boolean known) {
+        Reason reason = null;
+        if (ttlNanos > 0) {
+            Long expiresAt = rejected.get(key);
+            if (expiresAt != null) {
+                if (expiresAt - System.nanoTime() > 0) {
+                    reason = Reason.NEGATIVE_CACHE;
+                } else {
+                    rejected.remove(key, expiresAt);
+                }
+            }
+        }
+        if (reason == null && known) {
+            return null;
+        }
+        if (reason == null && address != null && !ipLimiter.allows(address)) {
+            reason = Reason.IP;
+        }
+        if (reason == null && !studyLimiter.allows(study != null ? study : "")) {
+            reason = Reason.STUDY;
+        }
+        if (reason != null) {
+            rejections[reason.ordinal()].increment();
+        }
+        return reason;
+    }
+
+    /**
+     * Records a token rejected by a full check.
+     */
+    public void rejected(String key, String study, String address) {
+        if (ttlNanos > 0) {
+            if (rejected.size() >= maxSize) {
+                evictExpired();
+            }
+            rejected.put(key, System.nanoTime() + ttlNanos);
+        }
+        if (address != null) {
+            ipLimiter.charge(address);
+        }
+        studyLimiter.charge(study != null ? study : "");
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<String, Long>> it = rejected.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue() - now <= 0) {
+                it.remove();
+            }
+        }
+        if (rejected.size() >= maxSize) {
+            // A flood of distinct guesses: forget the oldest, keep the recent ones rejected
+            long cutoff = TokenBucketLimiter.evictionCutoff(rejected.values(), now);
+            rejected.values().removeIf(expiresAt -> expiresAt - now <= cutoff);
+        }
+    }
+
+    public long getRejections(Reason reason) {
+        return (long) rejections[reason.ordinal()].count();
+    }
+
+    public String stats() {
+        StringBuilder stats = new StringBuilder("negativeEntries=").append(rejected.size());
+        for (Reason reason : Reason.values()) {
+            stats.append(", ").append(reason.tag).append('=').append(getRejections(reason));
+        }
+        return stats.append(", trackedAddresses=").append(ipLimiter.size()).toString();
+    }
+
+    public void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+    }
+}
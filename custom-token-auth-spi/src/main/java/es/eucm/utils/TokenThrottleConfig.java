@@ -0,0 +1,83 @@
+package es.eucm.utils;
+
+import org.jboss.logging.Logger;
+
+public class TokenThrottleConfig {
+    private static final Logger logger = Logger.getLogger(TokenThrottleConfig.class);
+
+    // Define configuration variables
+    private static final String NEGATIVE_CACHE_TTL = "TOKEN_NEGATIVE_CACHE_TTL";
+    private static final String NEGATIVE_CACHE_MAX_SIZE = "TOKEN_NEGATIVE_CACHE_MAX_SIZE";
+    private static final String IP_BURST = "TOKEN_THROTTLE_IP_BURST";
+    private static final String IP_PER_MINUTE = "TOKEN_THROTTLE_IP_PER_MINUTE";
+    private static final String STUDY_BURST = "TOKEN_THROTTLE_STUDY_BURST";
+    private static final String STUDY_PER_MINUTE = "TOKEN_THROTTLE_STUDY_PER_MINUTE";
+    private static final String MAX_SOURCES = "TOKEN_THROTTLE_MAX_SOURCES";
+
+    private long negativeCacheTtl;
+    private long negativeCacheMaxSize;
+    private long ipBurst;
+    private long ipPerMinute;
+    private long studyBurst;
+    private long studyPerMinute;
+    private long maxSources;
+
+    // Initialize the config from environment variables
+    public TokenThrottleConfig() {
+        this.negativeCacheTtl = EnvConfig.getLong(NEGATIVE_CACHE_TTL, 15000);
+        this.negativeCacheMaxSize = EnvConfig.getLong(NEGATIVE_CACHE_MAX_SIZE, 10000);
+        this.ipBurst = EnvConfig.getLong(IP_BURST, 30);
+        this.ipPerMinute = EnvConfig.getLong(IP_PER_MINUTE, 60);
+        this.studyBurst = EnvConfig.getLong(STUDY_BURST, 300);
+        this.studyPerMinute = EnvConfig.getLong(STUDY_PER_MINUTE, 600);
+        this.maxSources = EnvConfig.getLong(MAX_SOURCES, 10000);
+    }
+
+    // Milliseconds a rejected token is rejected again from memory (0 disables the cache)
+    public long getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
+    // Rejected tokens remembered at most
+    public long getNegativeCacheMaxSize() {
+        return negativeCacheMaxSize;
+    }
+
+    // Failed token checks a client address may make in a row (0 disables per-address throttling).
+    // Behind a reverse proxy, start Keycloak with --proxy-headers so addresses are the clients'
+    public long getIpBurst() {
+        return ipBurst;
+    }
+
+    // Failed token checks per minute a client address earns back
+    public long getIpPerMinute() {
+        return ipPerMinute;
+    }
+
+    // Failed token checks a study may take in a row, all clients together (0 disables per-study throttling)
+    public long getStudyBurst() {
+        return studyBurst;
+    }
+
+    // Failed token checks per minute a study earns back
+    public long getStudyPerMinute() {
+        return studyPerMinute;
+    }
+
+    // Client addresses or studies tracked at most; idle ones are dropped first
+    public long getMaxSources() {
+        return maxSources;
+    }
+
+    // Utility method to print all variables (optional)
+    public void printConfig() {
+        logger.info("Config values:");
+        logger.info(NEGATIVE_CACHE_TTL + ": " + negativeCacheTtl);
+        logger.info(NEGATIVE_CACHE_MAX_SIZE + ": " + negativeCacheMaxSize);
+        logger.info(IP_BURST + ": " + ipBurst);
+        logger.info(IP_PER_MINUTE + ": " + ipPerMinute);
+        logger.info(STUDY_BURST + ": " + studyBurst);
+        logger.info(STUDY_PER_MINUTE + ": " + studyPerMinute);
+        logger.info(MAX_SOURCES + ": " + maxSources);
+    }
+}
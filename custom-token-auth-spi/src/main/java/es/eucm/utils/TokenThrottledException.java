@@ -0,0 +1,13 @@
+package es.eucm.utils;
+
+/**
+ * Raised instead of checking a participant token while too many wrong tokens come from its client
+ * address or for its study. The token is neither accepted nor rejected: the participant is asked
+ * to try again later.
+ */
+public class TokenThrottledException extends DownstreamUnavailableException {
+
+    public TokenThrottledException(String message) {
+        super(message);
+    }
+}